@@ -0,0 +1,159 @@
+package nge.lk.mods.simpletabs.bench;
+
+import com.google.gson.JsonParseException;
+import net.minecraft.util.text.ITextComponent;
+import net.minecraft.util.text.TextComponentString;
+import nge.lk.mods.simpletabs.tabs.ChatTab;
+import nge.lk.mods.simpletabs.tabs.TabManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Replays a recorded chat log through the tab manager without a client window.
+ *
+ * Usage: {@code ChatReplayHarness <simpletabs.dat> <chat log> [rounds]}. Every line of the chat log is one message,
+ * either as plain text or as a JSON text component. The messages are routed to the real chat tabs of the given tab
+ * configuration and stored in their histories, running on a {@link StubChatClient}: lines are wrapped with a
+ * fixed-width stub font and notification sounds are only counted. The harness reports the throughput, the allocation
+ * rate and the 99th percentile of the per-message latency.
+ */
+public final class ChatReplayHarness {
+
+    /**
+     * The number of rounds which are run before measuring.
+     */
+    private static final int WARMUP_ROUNDS = 3;
+
+    /**
+     * The entry point of the harness.
+     *
+     * @param args The command line arguments.
+     * @throws IOException If the configuration or the chat log can't be read.
+     */
+    public static void main(final String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: ChatReplayHarness <simpletabs.dat> <chat log> [rounds]");
+            System.exit(1);
+        }
+
+        final List<ITextComponent> messages = readChatLog(new File(args[1]));
+        final int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        if (messages.isEmpty()) {
+            System.err.println("The chat log is empty");
+            System.exit(1);
+        }
+
+        try (HeadlessChat chat = new HeadlessChat(new File(args[0]))) {
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                replay(chat, messages, null);
+            }
+
+            final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+            final long[] latencies = new long[messages.size() * rounds];
+            final long notificationsBefore = chat.getClient().getNotifications();
+            final long allocatedBefore = getAllocatedBytes(threadBean);
+            final long start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                final long[] roundLatencies = new long[messages.size()];
+                replay(chat, messages, roundLatencies);
+                System.arraycopy(roundLatencies, 0, latencies, i * messages.size(), messages.size());
+            }
+            final long elapsed = System.nanoTime() - start;
+            final long allocated = getAllocatedBytes(threadBean) - allocatedBefore;
+
+            Arrays.sort(latencies);
+            final double seconds = elapsed / 1.0e9;
+            final List<ChatTab> tabs = chat.getAllTabs();
+            long retainedLines = 0;
+            for (final ChatTab tab : tabs) {
+                retainedLines += tab.getWrappedLineCount() + tab.getReceivedLineCount();
+            }
+
+            System.out.printf("Tabs:          %d%n", tabs.size());
+            System.out.printf("Messages:      %d (%d rounds)%n", latencies.length, rounds);
+            System.out.printf("Throughput:    %.0f messages/s%n", latencies.length / seconds);
+            System.out.printf("Allocation:    %.2f MiB/s (%d bytes/message)%n",
+                    allocated / seconds / (1024.0 * 1024.0), allocated / latencies.length);
+            System.out.printf("Latency p50:   %d ns%n", latencies[latencies.length / 2]);
+            System.out.printf("Latency p99:   %d ns%n", latencies[(int) (latencies.length * 0.99)]);
+            System.out.printf("Notifications: %d%n", chat.getClient().getNotifications() - notificationsBefore);
+            System.out.printf("Retained:      %d lines%n", retainedLines);
+        }
+    }
+
+    /**
+     * Receives all messages once, like the chat does.
+     *
+     * @param chat      The chat.
+     * @param messages  The messages.
+     * @param latencies Receives the latency of each message, or {@code null}.
+     */
+    private static void replay(final HeadlessChat chat, final List<ITextComponent> messages,
+                               final long[] latencies) {
+        final TabManager tabManager = chat.getTabManager();
+        for (int i = 0; i < messages.size(); i++) {
+            final long start = System.nanoTime();
+            tabManager.printChatMessageWithOptionalDeletion(messages.get(i), 0);
+            if (latencies != null) {
+                latencies[i] = System.nanoTime() - start;
+            }
+            chat.getClient().runTasks();
+        }
+    }
+
+    /**
+     * Reads a chat log.
+     *
+     * @param file The log file.
+     * @return The messages of the log.
+     * @throws IOException If the file can't be read.
+     */
+    private static List<ITextComponent> readChatLog(final File file) throws IOException {
+        final List<ITextComponent> messages = new ArrayList<>();
+        for (final String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            // JSON components start with an object or an array, everything else is plain text.
+            ITextComponent component = null;
+            if (line.startsWith("{") || line.startsWith("[")) {
+                try {
+                    component = ITextComponent.Serializer.jsonToComponent(line);
+                } catch (final JsonParseException ignored) {
+                    // Plain text starting with a channel tag.
+                }
+            }
+            messages.add(component != null ? component : new TextComponentString(line));
+        }
+        return messages;
+    }
+
+    /**
+     * Returns the number of bytes the current thread allocated so far.
+     *
+     * @param threadBean The thread management bean.
+     * @return The allocated bytes, or {@code 0} if the JVM does not support allocation tracking.
+     */
+    static long getAllocatedBytes(final ThreadMXBean threadBean) {
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(
+                    Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    /**
+     * Utility class.
+     */
+    private ChatReplayHarness() {
+    }
+}
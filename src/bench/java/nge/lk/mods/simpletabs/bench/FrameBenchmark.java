@@ -0,0 +1,156 @@
+package nge.lk.mods.simpletabs.bench;
+
+import net.minecraft.client.settings.GameSettings;
+import nge.lk.mods.simpletabs.core.TabSettings;
+import nge.lk.mods.simpletabs.core.filter.FilterMode;
+import nge.lk.mods.simpletabs.tabs.ChatTab;
+import nge.lk.mods.simpletabs.tabs.TabManager;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+
+/**
+ * Measures the per-frame cost of the chat with tabs without a client window.
+ *
+ * Usage: {@code FrameBenchmark [frames]}. Each frame runs {@link TabManager#drawChat}, which {@code GuiTabChat} calls
+ * every frame: expiring lines, the tab bar hit test, drawing the active chat tab, and drawing the tab bar through the
+ * {@code TabBarLayout} if the chat is open. The tabs are real chat tabs of a real tab manager, which measure text with
+ * the {@code CachingFontRenderer} backed by a stub font, and draw to a {@link StubChatClient} that only counts the
+ * operations. The benchmark varies the number of tabs, the chat scale, the chat height and whether the chat is open,
+ * and reports the CPU time, the allocations and the drawing operations per frame.
+ */
+public final class FrameBenchmark {
+
+    /**
+     * The numbers of tabs.
+     */
+    private static final int[] TAB_COUNTS = {1, 10, 100};
+
+    /**
+     * The chat scales.
+     */
+    private static final float[] CHAT_SCALES = {0.5f, 1.0f};
+
+    /**
+     * The chat height settings, from a short chat to the tallest chat.
+     */
+    private static final float[] CHAT_HEIGHTS = {0.25f, 1.0f};
+
+    /**
+     * The number of messages each tab receives before measuring.
+     */
+    private static final int MESSAGES_PER_TAB = 500;
+
+    /**
+     * The age of the lines, in ticks, such that the closed chat draws them half faded.
+     */
+    private static final int LINE_AGE = 190;
+
+    /**
+     * The number of frames which are run before measuring.
+     */
+    private static final int WARMUP_FRAMES = 20000;
+
+    /**
+     * The entry point of the benchmark.
+     *
+     * @param args The command line arguments.
+     * @throws IOException If the temporary configuration files can't be created or deleted.
+     */
+    public static void main(final String[] args) throws IOException {
+        final int frames = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        final boolean cpuTime = threadBean.isCurrentThreadCpuTimeSupported();
+
+        System.out.printf("%6s %6s %6s %6s %6s %12s %12s %10s%n", "Tabs", "Scale", "Height", "Open", "Rows",
+                "CPU ns/frame", "Bytes/frame", "Ops/frame");
+        for (final int tabCount : TAB_COUNTS) {
+            for (final float chatScale : CHAT_SCALES) {
+                try (HeadlessChat chat = createChat(tabCount, chatScale)) {
+                    final StubChatClient client = chat.getClient();
+                    final GameSettings gameSettings = client.getGameSettings();
+                    final TabManager tabManager = chat.getTabManager();
+                    for (final float chatHeight : CHAT_HEIGHTS) {
+                        gameSettings.chatHeightFocused = chatHeight;
+                        gameSettings.chatHeightUnfocused = chatHeight;
+                        for (final boolean chatOpen : new boolean[]{false, true}) {
+                            client.setChatOpen(chatOpen);
+                            for (int i = 0; i < WARMUP_FRAMES; i++) {
+                                drawFrame(chat, i);
+                            }
+
+                            client.resetOperations();
+                            final long cpuBefore = cpuTime ? threadBean.getCurrentThreadCpuTime() : System.nanoTime();
+                            final long allocatedBefore = ChatReplayHarness.getAllocatedBytes(threadBean);
+                            for (int i = 0; i < frames; i++) {
+                                drawFrame(chat, i);
+                            }
+                            final long allocated = ChatReplayHarness.getAllocatedBytes(threadBean) - allocatedBefore;
+                            final long cpu = (cpuTime ? threadBean.getCurrentThreadCpuTime() : System.nanoTime())
+                                    - cpuBefore;
+
+                            final ChatTab activeChat = tabManager.getActiveChat();
+                            System.out.printf("%6d %6.2f %6.2f %6s %6d %12d %12d %10d%n", tabCount, chatScale,
+                                    chatHeight, chatOpen, activeChat == null ? 0 : activeChat.getLineCount(),
+                                    cpu / frames, allocated / frames, client.getOperations() / frames);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a chat whose tabs each received the same number of messages.
+     *
+     * @param tabCount  The number of tabs.
+     * @param chatScale The chat scale, which determines the wrapping width.
+     * @return The chat.
+     * @throws IOException If the temporary configuration files can't be created.
+     */
+    private static HeadlessChat createChat(final int tabCount, final float chatScale) throws IOException {
+        final HeadlessChat chat = new HeadlessChat();
+        chat.getClient().getGameSettings().chatScale = chatScale;
+        for (int i = 0; i < tabCount; i++) {
+            chat.createTab("Tab" + i, "[t" + i + "]", FilterMode.KEYWORD, TabSettings.DEFAULT_HISTORY);
+        }
+        chat.deleteDefaultTab();
+
+        final Random random = new Random(0);
+        final StringBuilder message = new StringBuilder();
+        for (int i = 0; i < MESSAGES_PER_TAB; i++) {
+            for (int tab = 0; tab < tabCount; tab++) {
+                message.setLength(0);
+                message.append("[t").append(tab).append("] <Player").append(random.nextInt(50)).append('>');
+                final int words = 3 + random.nextInt(30);
+                for (int word = 0; word < words; word++) {
+                    message.append(' ').append(Integer.toString(random.nextInt(1 << 20), 36));
+                }
+                chat.receive(message.toString(), 0);
+            }
+        }
+        chat.getClient().setUpdateCounter(LINE_AGE);
+        return chat;
+    }
+
+    /**
+     * Runs the work of one frame, moving the mouse across the tab bar.
+     *
+     * @param chat  The chat.
+     * @param frame The number of the frame.
+     */
+    private static void drawFrame(final HeadlessChat chat, final int frame) {
+        final StubChatClient client = chat.getClient();
+        client.setMouseX(frame % 400 * client.getScaleFactor());
+        client.setMouseY(35 * client.getScaleFactor());
+        chat.getTabManager().drawChat(client.getUpdateCounter());
+    }
+
+    /**
+     * Utility class.
+     */
+    private FrameBenchmark() {
+    }
+}
@@ -0,0 +1,140 @@
+package nge.lk.mods.simpletabs.bench;
+
+import lombok.Getter;
+import net.minecraft.client.gui.GuiNewChat;
+import net.minecraft.util.text.TextComponentString;
+import nge.lk.mods.simpletabs.core.TabGroup;
+import nge.lk.mods.simpletabs.core.TabGroups;
+import nge.lk.mods.simpletabs.core.TabSettings;
+import nge.lk.mods.simpletabs.core.filter.FilterMode;
+import nge.lk.mods.simpletabs.tabs.ChatTab;
+import nge.lk.mods.simpletabs.tabs.TabManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * The mod's chat running on a {@link StubChatClient}: a real tab manager with chat tabs, whose configuration files are
+ * kept in a temporary directory.
+ */
+final class HeadlessChat implements AutoCloseable {
+
+    /**
+     * The chat client.
+     */
+    @Getter private final StubChatClient client = new StubChatClient();
+
+    /**
+     * The tab manager.
+     */
+    @Getter private final TabManager tabManager;
+
+    /**
+     * The directory of the configuration files.
+     */
+    private final Path directory;
+
+    /**
+     * Constructor. The chat starts with the default tab only.
+     *
+     * @throws IOException If the temporary directory can't be created.
+     */
+    HeadlessChat() throws IOException {
+        this(null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param tabsFile The tab configuration to start with, or {@code null} to start with the default tab only. The
+     *                 file is copied, so it is not changed.
+     * @throws IOException If the temporary directory can't be created or the tab configuration can't be copied.
+     */
+    HeadlessChat(final File tabsFile) throws IOException {
+        directory = Files.createTempDirectory("simpletabs-bench");
+        if (tabsFile != null) {
+            Files.copy(tabsFile.toPath(), directory.resolve("simpletabs.dat"));
+        }
+        tabManager = new TabManager(directory.resolve("simpletabs.dat").toFile(),
+                directory.resolve("simpletabs-profiles").toFile(), directory.resolve("simpletabs-fields.dat").toFile(),
+                client);
+    }
+
+    /**
+     * Creates a quiet whitelist tab in the active group, without retention time.
+     *
+     * @param title   The title of the tab.
+     * @param pattern The pattern the tab listens for.
+     * @param mode    How the pattern is interpreted.
+     * @param history The history setting of the tab.
+     */
+    void createTab(final String title, final String pattern, final FilterMode mode, final float history) {
+        tabManager.createTab(title, pattern, mode, true, "", false, history, TabSettings.RETENTION_FOREVER);
+        client.runTasks();
+    }
+
+    /**
+     * Deletes the default tab, which every new configuration starts with, and activates the first remaining tab.
+     */
+    void deleteDefaultTab() {
+        final int position = tabManager.getActiveTabGroup().indexOf(TabGroups.DEFAULT_TAB_NAME);
+        if (position != TabGroup.NO_TAB) {
+            tabManager.deleteTab(position);
+            tabManager.resetSelectedTab();
+        }
+    }
+
+    /**
+     * Receives a plain text message, like the chat does.
+     *
+     * @param text       The message.
+     * @param chatLineId The line ID, or {@code 0}.
+     */
+    void receive(final String text, final int chatLineId) {
+        tabManager.printChatMessageWithOptionalDeletion(new TextComponentString(text), chatLineId);
+        client.runTasks();
+    }
+
+    /**
+     * Returns the tabs of the active group.
+     *
+     * @return The tabs.
+     */
+    List<ChatTab> getTabs() {
+        return tabManager.getActiveTabGroup().getTabs();
+    }
+
+    /**
+     * Returns the tabs of all groups.
+     *
+     * @return The tabs.
+     */
+    List<ChatTab> getAllTabs() {
+        final List<ChatTab> tabs = new ArrayList<>();
+        for (final GuiNewChat chat : tabManager.getAllChats()) {
+            tabs.add((ChatTab) chat);
+        }
+        return tabs;
+    }
+
+    /**
+     * Empties all tabs and deletes the configuration files.
+     *
+     * @throws IOException If a file can't be deleted.
+     */
+    @Override
+    public void close() throws IOException {
+        tabManager.clearChatMessages(true);
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (final Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package nge.lk.mods.simpletabs.bench;
+
+import nge.lk.mods.simpletabs.core.MemoryBudget;
+import nge.lk.mods.simpletabs.core.TabSettings;
+import nge.lk.mods.simpletabs.core.filter.FilterMode;
+import nge.lk.mods.simpletabs.tabs.ChatTab;
+import nge.lk.mods.simpletabs.tabs.TabManager;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Pushes a long stream of synthetic messages through the tab manager and checks that the retained memory stays flat.
+ *
+ * Usage: {@code MemorySoakHarness [messages]}. The messages go through the chat's storage path: the tab manager routes
+ * them to real chat tabs, which share the received lines, wrap them with the line wrapper and keep them in their line
+ * histories against the tab manager's memory budget. There is one tab for each of a range of history settings,
+ * including {@link TabSettings#HISTORY_INFINITE}, which accepts every message, and a sample tab with infinite history
+ * which accepts few messages. Some messages replace the line
+ * with the same line ID, and some line IDs are deleted, like the game does with e.g. status lines. Several messages
+ * arrive in the same tick, and the oldest messages of all tabs but the catch-all tab with infinite history are evicted
+ * now and then, like the memory budget does. At every checkpoint the harness verifies that
+ * <ul>
+ * <li>no tab keeps more wrapped or received lines than its history setting allows,</li>
+ * <li>the sample tab keeps the same wrapped lines and about the same bytes as when it is rebuilt from its received
+ * lines, and the limited tabs don't keep wrapped lines which are gone after rebuilding,</li>
+ * <li>no tab keeps the lines of deleted line IDs,</li>
+ * <li>the memory budget is not exceeded and equals the sum of the tabs' usage and the shared lines, and</li>
+ * <li>the bytes of the limited histories and the shared lines, and the heap retained after garbage collection stay
+ * flat after the first checkpoint, when the limited histories are full and the infinite history spills its old lines
+ * to disk.</li>
+ * </ul>
+ * The harness exits with status 1 on the first violation.
+ */
+public final class MemorySoakHarness {
+
+    /**
+     * The history settings of the tabs, from a single line to infinite history.
+     */
+    private static final float[] HISTORY_SETTINGS = {0.0f, 0.2f, TabSettings.DEFAULT_HISTORY, 0.5f, 0.7f, 1.0f};
+
+    /**
+     * The keyword of the sample tab, which matches a few of the players.
+     */
+    private static final String SAMPLE_KEYWORD = "<Player7";
+
+    /**
+     * The number of messages between checkpoints.
+     */
+    private static final int CHECKPOINT_INTERVAL = 100000;
+
+    /**
+     * The number of messages after which another tab is viewed.
+     */
+    private static final int VIEW_INTERVAL = 10000;
+
+    /**
+     * The number of messages after which a message replaces the line with the same line ID.
+     */
+    private static final int REPLACE_INTERVAL = 50;
+
+    /**
+     * The number of messages after which the lines with a line ID are deleted.
+     */
+    private static final int DELETE_INTERVAL = 997;
+
+    /**
+     * The number of messages which arrive in the same tick.
+     */
+    private static final int MESSAGES_PER_TICK = 8;
+
+    /**
+     * The number of messages after which the oldest messages of a tab are evicted.
+     */
+    private static final int EVICT_INTERVAL = 1009;
+
+    /**
+     * The number of messages which are evicted at once.
+     */
+    private static final int EVICTED_MESSAGES = 5;
+
+    /**
+     * The difference of the bytes of the rebuilt sample tab which is tolerated, as a fraction of the bytes. Rebuilding
+     * compresses the lines in differently aligned blocks.
+     */
+    private static final int REBUILD_SLACK_FRACTION = 16;
+
+    /**
+     * The number of distinct line IDs.
+     */
+    private static final int LINE_IDS = 16;
+
+    /**
+     * The growth of the bytes of the limited histories and the shared lines which is tolerated after the first
+     * checkpoint. The estimates of the lines differ, so full histories don't have exactly the same size.
+     */
+    private static final long BYTES_GROWTH_SLACK = 256L << 10;
+
+    /**
+     * The retained heap growth which is tolerated after the first checkpoint, in bytes. Collections are not exact,
+     * the histories keep the most recently decoded blocks outside of the budget, and the index of the spilled lines
+     * of the infinite history stays on the heap.
+     */
+    private static final long HEAP_GROWTH_SLACK = 16L << 20;
+
+    /**
+     * The entry point of the harness.
+     *
+     * @param args The command line arguments.
+     * @throws IOException If the temporary configuration files can't be created or deleted.
+     */
+    public static void main(final String[] args) throws IOException {
+        final long messages = args.length > 0 ? Long.parseLong(args[0]) : 1000000L;
+
+        try (HeadlessChat chat = new HeadlessChat()) {
+            for (final float history : HISTORY_SETTINGS) {
+                chat.createTab("History" + TabSettings.getHistorySize(history), ".*", FilterMode.REGEX, history);
+            }
+            chat.createTab("Sample", SAMPLE_KEYWORD, FilterMode.KEYWORD, 1.0f);
+            chat.deleteDefaultTab();
+            soak(chat, messages);
+        }
+        System.out.println("Passed");
+    }
+
+    /**
+     * Sends the messages and checks the bounds at every checkpoint.
+     *
+     * @param chat     The chat.
+     * @param messages The number of messages.
+     */
+    private static void soak(final HeadlessChat chat, final long messages) {
+        final StubChatClient client = chat.getClient();
+        final TabManager tabManager = chat.getTabManager();
+        final MemoryBudget budget = tabManager.getMemoryBudget();
+        final MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+        final List<ChatTab> tabs = chat.getTabs();
+        final ChatTab catchAllTab = tabs.get(HISTORY_SETTINGS.length - 1);
+        final List<ChatTab> evictedTabs = new ArrayList<>(tabs);
+        evictedTabs.remove(catchAllTab);
+        final Random random = new Random(0);
+        final StringBuilder message = new StringBuilder();
+        long baselineBytes = -1;
+        long baselineHeap = -1;
+        final long start = System.nanoTime();
+        for (long sent = 1; sent <= messages; sent++) {
+            message.setLength(0);
+            message.append("<Player").append(random.nextInt(500)).append('>');
+            final int words = 1 + random.nextInt(40);
+            for (int word = 0; word < words; word++) {
+                message.append(' ').append(Long.toString(random.nextLong() >>> 24, 36));
+            }
+
+            client.setUpdateCounter((int) (sent / MESSAGES_PER_TICK));
+            chat.receive(message.toString(), sent % REPLACE_INTERVAL == 0 ? 1 + random.nextInt(LINE_IDS) : 0);
+
+            if (sent % DELETE_INTERVAL == 0) {
+                final int chatLineId = 1 + random.nextInt(LINE_IDS);
+                tabManager.deleteChatLine(chatLineId);
+                for (final ChatTab tab : tabs) {
+                    if (tab.holdsLineId(chatLineId)) {
+                        fail(String.format("a tab with history %d keeps the deleted line ID %d",
+                                tab.getSettings().getHistorySize(), chatLineId));
+                    }
+                }
+            }
+
+            if (sent % EVICT_INTERVAL == 0) {
+                // The catch-all tab with infinite history is left alone, it can't be rebuilt quickly.
+                final ChatTab tab = evictedTabs.get((int) (sent / EVICT_INTERVAL % evictedTabs.size()));
+                for (int i = 0; i < EVICTED_MESSAGES; i++) {
+                    tab.evictOldest();
+                }
+            }
+
+            if (sent % VIEW_INTERVAL == 0) {
+                tabManager.makeTabActive((int) (sent / VIEW_INTERVAL % tabs.size()));
+                tabManager.drawChat(client.getUpdateCounter());
+            }
+
+            if (sent % CHECKPOINT_INTERVAL == 0 || sent == messages) {
+                checkRebuilt(evictedTabs);
+                final long bytes = checkHistories(chat, budget);
+                final long heap = getRetainedHeap(memoryBean);
+                if (baselineHeap < 0) {
+                    baselineBytes = bytes;
+                    baselineHeap = heap;
+                } else if (bytes - baselineBytes > BYTES_GROWTH_SLACK) {
+                    fail(String.format("the limited histories grew from %d to %d bytes", baselineBytes, bytes));
+                } else if (heap - baselineHeap > HEAP_GROWTH_SLACK) {
+                    fail(String.format("retained heap grew from %d to %d bytes", baselineHeap, heap));
+                }
+
+                System.out.printf("%,12d messages  %6.1f s  heap %7.1f MiB  budget %7.1f/%.1f MiB%n", sent,
+                        (System.nanoTime() - start) / 1.0e9, heap / 1048576.0, budget.getUsedBytes() / 1048576.0,
+                        budget.getLimit() / 1048576.0);
+            }
+        }
+
+        for (final ChatTab tab : tabs) {
+            System.out.printf("History %8d: %8d lines, %8d wrapped lines, %7.1f MiB%n",
+                    tab.getSettings().getHistorySize(), tab.getReceivedLineCount(), tab.getWrappedLineCount(),
+                    tab.getUsedBytes() / 1048576.0);
+        }
+    }
+
+    /**
+     * Rebuilds the wrapped lines of tabs from their received lines, and checks them against the wrapped lines they
+     * kept. The wrapped lines of the sample tab are never trimmed, so they must be the same. The limited tabs may
+     * have lost their oldest wrapped lines to trimming and deleted lines before, which come back when rebuilding.
+     *
+     * @param tabs The tabs.
+     */
+    private static void checkRebuilt(final List<ChatTab> tabs) {
+        for (final ChatTab tab : tabs) {
+            final int historySize = tab.getSettings().getHistorySize();
+            final int wrappedLines = tab.getWrappedLineCount();
+            final long bytes = tab.getUsedBytes();
+            tab.refreshChat();
+            if (historySize != TabSettings.HISTORY_INFINITE) {
+                if (tab.getWrappedLineCount() < wrappedLines) {
+                    fail(String.format("a tab with history %d keeps %d wrapped lines, but %d after rebuilding",
+                            historySize, wrappedLines, tab.getWrappedLineCount()));
+                }
+            } else if (tab.getWrappedLineCount() != wrappedLines) {
+                fail(String.format("the sample tab keeps %d wrapped lines, but %d after rebuilding", wrappedLines,
+                        tab.getWrappedLineCount()));
+            } else if (Math.abs(tab.getUsedBytes() - bytes) > bytes / REBUILD_SLACK_FRACTION) {
+                fail(String.format("the sample tab uses %d bytes, but %d after rebuilding", bytes,
+                        tab.getUsedBytes()));
+            }
+        }
+    }
+
+    /**
+     * Checks the history bounds of all tabs and the accounting of the budget.
+     *
+     * @param chat   The chat.
+     * @param budget The memory budget.
+     * @return The bytes of the limited histories and the shared lines.
+     */
+    private static long checkHistories(final HeadlessChat chat, final MemoryBudget budget) {
+        long usedBytes = budget.getSharedBytes();
+        long limitedBytes = budget.getSharedBytes();
+        for (final ChatTab tab : chat.getTabs()) {
+            final int historySize = tab.getSettings().getHistorySize();
+            if (historySize != TabSettings.HISTORY_INFINITE) {
+                limitedBytes += tab.getUsedBytes();
+                if (tab.getReceivedLineCount() > historySize) {
+                    fail(String.format("%d received lines in a tab with history %d", tab.getReceivedLineCount(),
+                            historySize));
+                }
+                if (tab.getWrappedLineCount() > historySize) {
+                    fail(String.format("%d wrapped lines in a tab with history %d", tab.getWrappedLineCount(),
+                            historySize));
+                }
+            }
+            usedBytes += tab.getUsedBytes();
+        }
+
+        if (usedBytes != budget.getUsedBytes()) {
+            fail(String.format("the budget accounts %d bytes, but the tabs and shared lines use %d bytes",
+                    budget.getUsedBytes(), usedBytes));
+        }
+        if (budget.isExceeded()) {
+            fail(String.format("the budget is exceeded: %d of %d bytes", budget.getUsedBytes(), budget.getLimit()));
+        }
+        return limitedBytes;
+    }
+
+    /**
+     * Measures the heap which is retained after garbage collection.
+     *
+     * @param memoryBean The memory management bean.
+     * @return The used heap in bytes.
+     */
+    private static long getRetainedHeap(final MemoryMXBean memoryBean) {
+        // Several collections, so objects with finalizers and soft caches settle.
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memoryBean.getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Reports a violated bound and terminates.
+     *
+     * @param reason The violated bound.
+     */
+    private static void fail(final String reason) {
+        System.err.println("Failed: " + reason);
+        System.exit(1);
+    }
+
+    /**
+     * Utility class.
+     */
+    private MemorySoakHarness() {
+    }
+}
@@ -0,0 +1,162 @@
+package nge.lk.mods.simpletabs.bench;
+
+import lombok.Getter;
+import lombok.Setter;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.gui.FontRenderer;
+import net.minecraft.client.resources.IResourceManagerReloadListener;
+import net.minecraft.client.settings.GameSettings;
+import nge.lk.mods.simpletabs.tabs.ChatClient;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * A chat client without a game window. Text is measured with the {@link StubFontRenderer}, drawing only counts the
+ * operations, and tasks for the client thread are queued until they are run by the harness.
+ */
+class StubChatClient implements ChatClient {
+
+    /**
+     * The game settings, with the default chat settings.
+     */
+    @Getter private final GameSettings gameSettings = new GameSettings();
+
+    /**
+     * The font renderer.
+     */
+    @Getter private final FontRenderer fontRenderer = new StubFontRenderer(gameSettings);
+
+    /**
+     * The update counter of the chat.
+     */
+    @Getter @Setter private int updateCounter;
+
+    /**
+     * Whether the chat screen is open.
+     */
+    @Setter private boolean chatOpen;
+
+    /**
+     * The scale factor of the GUI.
+     */
+    @Getter @Setter private int scaleFactor = 2;
+
+    /**
+     * The horizontal mouse position in window pixels.
+     */
+    @Getter @Setter private int mouseX;
+
+    /**
+     * The vertical mouse position in window pixels.
+     */
+    @Getter @Setter private int mouseY;
+
+    /**
+     * The number of played notification sounds.
+     */
+    @Getter private long notifications;
+
+    /**
+     * The number of drawing operations.
+     */
+    @Getter private long operations;
+
+    /**
+     * The sum of all drawn widths and colors, so the drawing is not optimized away.
+     */
+    @Getter private long checksum;
+
+    /**
+     * The tasks for the client thread, which may be added from any thread.
+     */
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+
+    /**
+     * Runs the queued tasks for the client thread.
+     */
+    void runTasks() {
+        while (true) {
+            final Runnable task;
+            synchronized (tasks) {
+                task = tasks.poll();
+            }
+            if (task == null) {
+                return;
+            }
+            task.run();
+        }
+    }
+
+    /**
+     * Resets the number of drawing operations.
+     */
+    void resetOperations() {
+        operations = 0;
+    }
+
+    @Override
+    public Minecraft getMinecraft() {
+        return null;
+    }
+
+    @Override
+    public void addReloadListener(final IResourceManagerReloadListener listener) {
+        // Resources are never reloaded.
+    }
+
+    @Override
+    public boolean isChatOpen() {
+        return chatOpen;
+    }
+
+    @Override
+    public void runOnClientThread(final Runnable task) {
+        synchronized (tasks) {
+            tasks.add(task);
+        }
+    }
+
+    @Override
+    public void playNotification() {
+        notifications++;
+    }
+
+    @Override
+    public void pushMatrix() {
+        operations++;
+    }
+
+    @Override
+    public void popMatrix() {
+        operations++;
+    }
+
+    @Override
+    public void translate(final float x, final float y) {
+        operations++;
+    }
+
+    @Override
+    public void scale(final float factor) {
+        operations++;
+    }
+
+    @Override
+    public void drawRect(final int left, final int top, final int right, final int bottom, final int color) {
+        operations++;
+        checksum += (right - left) * (bottom - top) + color;
+    }
+
+    @Override
+    public void drawString(final String text, final int x, final int y, final int color) {
+        operations++;
+        checksum += fontRenderer.drawString(text, x, y, color) + color;
+    }
+
+    @Override
+    public void drawStringWithShadow(final String text, final float x, final float y, final int color) {
+        operations++;
+        checksum += fontRenderer.drawStringWithShadow(text, x, y, color) + color;
+    }
+}
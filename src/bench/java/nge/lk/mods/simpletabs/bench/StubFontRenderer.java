@@ -0,0 +1,98 @@
+package nge.lk.mods.simpletabs.bench;
+
+import net.minecraft.client.gui.FontRenderer;
+import net.minecraft.client.resources.IResource;
+import net.minecraft.client.resources.SimpleResource;
+import net.minecraft.client.settings.GameSettings;
+import net.minecraft.util.ResourceLocation;
+
+import java.io.ByteArrayInputStream;
+
+/**
+ * A font renderer with fixed glyph widths, standing in for the game's font renderer when running headless. Drawing
+ * only measures the text.
+ */
+class StubFontRenderer extends FontRenderer {
+
+    /**
+     * The width of a space, including spacing.
+     */
+    private static final int SPACE_WIDTH = 4;
+
+    /**
+     * The width of any other glyph, including spacing.
+     */
+    private static final int GLYPH_WIDTH = 6;
+
+    /**
+     * Constructor.
+     *
+     * @param gameSettings The game settings.
+     */
+    StubFontRenderer(final GameSettings gameSettings) {
+        super(gameSettings, new ResourceLocation("textures/font/ascii.png"), null, false);
+    }
+
+    @Override
+    public int getStringWidth(final String text) {
+        if (text == null) {
+            return 0;
+        }
+        int width = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\u00a7' && i + 1 < text.length()) {
+                // Formatting codes are not drawn.
+                i++;
+            } else {
+                width += getCharWidth(text.charAt(i));
+            }
+        }
+        return width;
+    }
+
+    @Override
+    public int getCharWidth(final char character) {
+        return character == ' ' ? SPACE_WIDTH : GLYPH_WIDTH;
+    }
+
+    @Override
+    public String trimStringToWidth(final String text, final int width) {
+        return trimStringToWidth(text, width, false);
+    }
+
+    @Override
+    public String trimStringToWidth(final String text, final int width, final boolean reverse) {
+        int trimmedWidth = 0;
+        int length = 0;
+        while (length < text.length()) {
+            final char character = text.charAt(reverse ? text.length() - 1 - length : length);
+            trimmedWidth += getCharWidth(character);
+            if (trimmedWidth > width) {
+                break;
+            }
+            length++;
+        }
+        return reverse ? text.substring(text.length() - length) : text.substring(0, length);
+    }
+
+    @Override
+    public int drawString(final String text, final int x, final int y, final int color) {
+        return x + getStringWidth(text);
+    }
+
+    @Override
+    public int drawStringWithShadow(final String text, final float x, final float y, final int color) {
+        return (int) x + getStringWidth(text) + 1;
+    }
+
+    @Override
+    protected void bindTexture(final ResourceLocation location) {
+        // There are no textures.
+    }
+
+    @Override
+    protected IResource getResource(final ResourceLocation location) {
+        // There are no resources, the glyph widths are fixed.
+        return new SimpleResource("stub", location, new ByteArrayInputStream(new byte[0]), null, null);
+    }
+}
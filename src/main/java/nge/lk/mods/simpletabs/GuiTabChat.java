@@ -2,7 +2,6 @@ package nge.lk.mods.simpletabs;
 
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.gui.GuiNewChat;
-import net.minecraft.client.renderer.GlStateManager;
 import net.minecraft.util.text.ITextComponent;
 import nge.lk.mods.simpletabs.tabs.TabManager;
 
@@ -30,25 +29,12 @@ public class GuiTabChat extends GuiNewChat {
 
     @Override
     public void drawChat(final int updateCounter) {
-        tabManager.updateTabs(getChatScale());
-        if (tabManager.getActiveChat() != null) {
-            tabManager.getActiveChat().drawChat(updateCounter);
-        }
-
-        GlStateManager.pushMatrix();
-        GlStateManager.translate(2.0F, 8.0F, 0.0F);
-        GlStateManager.scale(getChatScale(), getChatScale(), 1.0f);
-
-        if (getChatOpen()) {
-            tabManager.drawTabLabels();
-        }
-
-        GlStateManager.popMatrix();
+        tabManager.drawChat(updateCounter);
     }
 
     @Override
     public void clearChatMessages(final boolean clearSent) {
-        tabManager.getAllChats().forEach(chat -> chat.clearChatMessages(clearSent));
+        tabManager.clearChatMessages(clearSent);
     }
 
     @Override
@@ -56,9 +42,14 @@ public class GuiTabChat extends GuiNewChat {
         tabManager.printChatMessageWithOptionalDeletion(chatComponent, chatLineId);
     }
 
+    @Override
+    public void deleteChatLine(final int id) {
+        tabManager.deleteChatLine(id);
+    }
+
     @Override
     public void refreshChat() {
-        tabManager.getAllChats().forEach(GuiNewChat::refreshChat);
+        tabManager.refreshChat();
     }
 
     @Override
@@ -7,18 +7,25 @@ import nge.lk.mods.commonlib.gui.factory.element.ButtonElement;
 import nge.lk.mods.commonlib.gui.factory.element.InputElement;
 import nge.lk.mods.commonlib.gui.factory.element.SliderElement;
 import nge.lk.mods.commonlib.gui.factory.element.TextElement;
+import nge.lk.mods.simpletabs.core.MemoryBudget;
+import nge.lk.mods.simpletabs.core.TabSettings;
+import nge.lk.mods.simpletabs.core.filter.FilterMode;
+import nge.lk.mods.simpletabs.core.filter.FilterPlan;
 import nge.lk.mods.simpletabs.tabs.ChatTab;
 import nge.lk.mods.simpletabs.tabs.TabManager;
 
 import java.util.function.Consumer;
-import java.util.regex.Pattern;
-import java.util.regex.PatternSyntaxException;
 
 /**
  * An editor for creating or changing tabs.
  */
 public class GuiTabEditor extends GuiFactory implements Consumer<ButtonElement> {
 
+    /**
+     * The selectable retention times in minutes.
+     */
+    private static final int[] RETENTION_PRESETS = {TabSettings.RETENTION_FOREVER, 5, 15, 30, 60, 180, 720, 1440};
+
     /**
      * The tab that is edited or null if the tab is new.
      */
@@ -60,9 +67,14 @@ public class GuiTabEditor extends GuiFactory implements Consumer<ButtonElement>
     private SliderElement historySlider;
 
     /**
-     * The button for enabling expert mode.
+     * The button for cycling through the retention times.
+     */
+    private ButtonElement retentionButton;
+
+    /**
+     * The button for switching between the filter modes.
      */
-    private ButtonElement expertModeButton;
+    private ButtonElement modeButton;
 
     /**
      * The button for switching between whitelist and blacklist.
@@ -118,21 +130,23 @@ public class GuiTabEditor extends GuiFactory implements Consumer<ButtonElement>
         } else if (buttonElement == saveButton || buttonElement == saveCloseButton) {
             if (editingTab != null) {
                 // Save the changes.
-                editingTab.updatePattern(patternElement.getTextField().getText(),
-                        !((Boolean) expertModeButton.getMetadata()), ((Boolean) whitelistButton.getMetadata()),
+                tabManager.updatePattern(editingTab, patternElement.getTextField().getText(),
+                        (FilterMode) modeButton.getMetadata(), ((Boolean) whitelistButton.getMetadata()),
                         ((Boolean) notifyButton.getMetadata()));
-                editingTab.setPrefix(prefixElement.getTextField().getText());
-                editingTab.setHistory(historySlider.getSlider().getSliderValue());
+                editingTab.getSettings().setPrefix(prefixElement.getTextField().getText());
+                editingTab.getSettings().setHistory(historySlider.getSlider().getSliderValue());
+                tabManager.updateRetention(editingTab, (Integer) retentionButton.getMetadata());
             } else {
                 // Create a new tab.
                 tabManager.createTab(
                         nameElement.getTextField().getText(),
                         patternElement.getTextField().getText(),
-                        !((Boolean) expertModeButton.getMetadata()),
+                        (FilterMode) modeButton.getMetadata(),
                         ((Boolean) whitelistButton.getMetadata()),
                         prefixElement.getTextField().getText(),
                         ((Boolean) notifyButton.getMetadata()),
-                        historySlider.getSlider().getSliderValue()
+                        historySlider.getSlider().getSliderValue(),
+                        (Integer) retentionButton.getMetadata()
                 );
             }
             tabManager.saveState();
@@ -141,9 +155,10 @@ public class GuiTabEditor extends GuiFactory implements Consumer<ButtonElement>
                 parentScreen = null;
             }
             closeGui();
-        } else if (buttonElement == expertModeButton) {
-            // Toggle the button's state which is stored in the metadata.
-            expertModeButton.setMetadata(!((Boolean) expertModeButton.getMetadata()));
+        } else if (buttonElement == modeButton) {
+            // Cycle the button's state which is stored in the metadata.
+            final FilterMode[] modes = FilterMode.values();
+            modeButton.setMetadata(modes[(((FilterMode) modeButton.getMetadata()).ordinal() + 1) % modes.length]);
 
             // Update visuals to reflect the change.
             updateCaptions();
@@ -153,6 +168,20 @@ public class GuiTabEditor extends GuiFactory implements Consumer<ButtonElement>
 
             // Update visuals to reflect the change.
             updateCaptions();
+        } else if (buttonElement == retentionButton) {
+            // Cycle the button's state which is stored in the metadata, falling back to the first preset.
+            final int retention = (Integer) retentionButton.getMetadata();
+            int next = 0;
+            for (int i = 0; i < RETENTION_PRESETS.length - 1; i++) {
+                if (RETENTION_PRESETS[i] == retention) {
+                    next = i + 1;
+                    break;
+                }
+            }
+            retentionButton.setMetadata(RETENTION_PRESETS[next]);
+
+            // Update visuals.
+            updateCaptions();
         } else if (buttonElement == notifyButton) {
             // Toggle the button's state in the metadata.
             notifyButton.setMetadata(!((Boolean) notifyButton.getMetadata()));
@@ -170,9 +199,8 @@ public class GuiTabEditor extends GuiFactory implements Consumer<ButtonElement>
 
         // Pattern check.
         try {
-            final int patternFlags = ((Boolean) expertModeButton.getMetadata()) ? 0 : Pattern.LITERAL;
-            Pattern.compile(patternElement.getTextField().getText(), patternFlags);
-        } catch (final PatternSyntaxException ignored) {
+            FilterPlan.validate(patternElement.getTextField().getText(), (FilterMode) modeButton.getMetadata());
+        } catch (final IllegalArgumentException ignored) {
             canSave = false;
         }
 
@@ -200,50 +228,56 @@ public class GuiTabEditor extends GuiFactory implements Consumer<ButtonElement>
         nameElement.getTextField().setCursorPositionZero();
         addBlank(new Positioning().relativeWidth(4));
 
-        expertModeButton = addButton(this,
+        modeButton = addButton(this,
                 new Positioning().relativeWidth(40).absoluteHeight(20).breakRow());
-        expertModeButton.setMetadata(editingTab != null && !editingTab.isLiteral());
+        modeButton.setMetadata(editingTab != null ? editingTab.getSettings().getMode() : FilterMode.KEYWORD);
         addBlank(new Positioning().breakRow().absoluteHeight(10));
 
         patternCaption = addText(new Positioning().breakRow());
         patternElement = addInput(new Positioning().relativeWidth(40).absoluteHeight(20));
         patternElement.getTextField().setMaxStringLength(1024);
-        patternElement.getTextField().setText(editingTab != null ? editingTab.getPattern() : "");
+        patternElement.getTextField().setText(editingTab != null ? editingTab.getSettings().getPattern() : "");
         patternElement.getTextField().setCursorPositionZero();
         addBlank(new Positioning().relativeWidth(4));
 
         whitelistButton = addButton(this,
                 new Positioning().relativeWidth(19).absoluteHeight(20));
-        whitelistButton.setMetadata(editingTab == null || editingTab.isWhitelist());
+        whitelistButton.setMetadata(editingTab == null || editingTab.getSettings().isWhitelist());
         addBlank(new Positioning().relativeWidth(1));
 
         notifyButton = addButton(this, new Positioning().relativeWidth(19).absoluteHeight(20).breakRow());
-        notifyButton.setMetadata(editingTab != null && editingTab.isNotify());
+        notifyButton.setMetadata(editingTab != null && editingTab.getSettings().isNotify());
         addBlank(new Positioning().breakRow().absoluteHeight(10));
 
-        // At this point, all elements having captions are created.
-        updateCaptions();
-
         addText(new Positioning().breakRow()).setText("Tab Prefix (for messages sent in this tab)",
                 0xA0A0A0);
         prefixElement = addInput(new Positioning().relativeWidth(40).absoluteHeight(20));
         prefixElement.getTextField().setMaxStringLength(255);
-        prefixElement.getTextField().setText(editingTab != null ? editingTab.getPrefix() : "");
+        prefixElement.getTextField().setText(editingTab != null ? editingTab.getSettings().getPrefix() : "");
         prefixElement.getTextField().setCursorPositionZero();
         addBlank(new Positioning().relativeWidth(4));
 
         historySlider = addSlider(0.0f, 1.0f,
-                editingTab == null ? 1.0f / 3.0f : editingTab.getHistory(), this::getHistoryCaption,
-                (elem, val) -> {
+                editingTab == null ? TabSettings.DEFAULT_HISTORY : editingTab.getSettings().getHistory(),
+                this::getHistoryCaption, (elem, val) -> {
                 }, new Positioning().relativeWidth(40).absoluteHeight(20).breakRow());
+        addBlank(new Positioning().relativeWidth(44));
+        retentionButton = addButton(this, new Positioning().relativeWidth(40).absoluteHeight(20).breakRow());
+        retentionButton.setMetadata(editingTab != null ? editingTab.getSettings().getRetention()
+                : TabSettings.RETENTION_FOREVER);
+
+        // At this point, all elements having captions are created.
+        updateCaptions();
+
+        addText(new Positioning().breakRow()).setText(getMemoryCaption(), 0xA0A0A0);
         addBlank(new Positioning().breakRow().absoluteHeight(10));
 
         addText(new Positioning().breakRow()).setText("You can delete tabs by middle clicking them",
                 0xA0A0A0);
         addText(new Positioning().breakRow()).setText("You can edit existing tabs by right clicking them",
                 0xA0A0A0);
-        addText(new Positioning().breakRow()).setText("Don't use expert mode unless you understand regular expressions!",
-                0xA0A0A0);
+        addText(new Positioning().breakRow()).setText("Expressions combine \"text\", /regex/ and sender=\"name\" "
+                + "with & | ! ( )", 0xA0A0A0);
         addText(new Positioning()).setText("Notifications play a sound when a new message is received in this tab",
                 0xA0A0A0);
 
@@ -271,8 +305,8 @@ public class GuiTabEditor extends GuiFactory implements Consumer<ButtonElement>
      * Updates the captions of the tab pattern input and the toggle buttons.
      */
     private void updateCaptions() {
-        final String indicator = ((Boolean) expertModeButton.getMetadata()) ? "On" : "Off";
-        expertModeButton.getButton().displayString = "Expert Mode: " + indicator;
+        final FilterMode mode = (FilterMode) modeButton.getMetadata();
+        modeButton.getButton().displayString = "Mode: " + getModeName(mode);
 
         whitelistButton.getButton().displayString =
                 ((Boolean) whitelistButton.getMetadata()) ? "Whitelist" : "Blacklist";
@@ -280,13 +314,78 @@ public class GuiTabEditor extends GuiFactory implements Consumer<ButtonElement>
         notifyButton.getButton().displayString =
                 ((Boolean) notifyButton.getMetadata()) ? "Notify: Yes" : "Notify: No";
 
-        if ((Boolean) expertModeButton.getMetadata()) {
-            // Provide expert caption.
-            patternCaption.setText("Tab Pattern (regular expression)", 0xA0A0A0);
-        } else {
-            // Provide simple caption.
-            patternCaption.setText("Tab Pattern (keyword for this tab)", 0xA0A0A0);
+        retentionButton.getButton().displayString =
+                "Expire: " + getRetentionName((Integer) retentionButton.getMetadata());
+
+        switch (mode) {
+            case REGEX:
+                patternCaption.setText("Tab Pattern (regular expression)", 0xA0A0A0);
+                break;
+            case EXPRESSION:
+                patternCaption.setText("Tab Pattern (filter expression)", 0xA0A0A0);
+                break;
+            case PREFIX:
+                patternCaption.setText("Tab Key (first word of the message)", 0xA0A0A0);
+                break;
+            case TAG:
+                patternCaption.setText("Tab Key (first [tag] of the message)", 0xA0A0A0);
+                break;
+            default:
+                patternCaption.setText("Tab Pattern (keyword for this tab)", 0xA0A0A0);
+                break;
+        }
+    }
+
+    /**
+     * Returns the display name of a filter mode.
+     *
+     * @param mode The filter mode.
+     * @return The display name.
+     */
+    private static String getModeName(final FilterMode mode) {
+        switch (mode) {
+            case REGEX:
+                return "Regex";
+            case EXPRESSION:
+                return "Expression";
+            case PREFIX:
+                return "Prefix Key";
+            case TAG:
+                return "Tag Key";
+            default:
+                return "Keyword";
+        }
+    }
+
+    /**
+     * Returns the display name of a retention time.
+     *
+     * @param retention The retention time in minutes, or {@link TabSettings#RETENTION_FOREVER}.
+     * @return The display name.
+     */
+    private static String getRetentionName(final int retention) {
+        if (retention == TabSettings.RETENTION_FOREVER) {
+            return "Never";
+        }
+        if (retention % 60 == 0) {
+            return retention / 60 + " h";
+        }
+        return retention + " min";
+    }
+
+    /**
+     * Returns the caption showing the memory used by the edited tab and by all tabs.
+     *
+     * @return The memory caption.
+     */
+    private String getMemoryCaption() {
+        final MemoryBudget budget = tabManager.getMemoryBudget();
+        final String total = String.format("all tabs: %.1f of %.1f MiB", budget.getUsedBytes() / (1024.0 * 1024.0),
+                budget.getLimit() / (1024.0 * 1024.0));
+        if (editingTab == null) {
+            return "Memory (" + total + ")";
         }
+        return String.format("Memory: %.1f KiB (%s)", editingTab.getUsedBytes() / 1024.0, total);
     }
 
     /**
@@ -297,7 +396,7 @@ public class GuiTabEditor extends GuiFactory implements Consumer<ButtonElement>
      * @return The slider caption.
      */
     private String getHistoryCaption(final SliderElement element, final float value) {
-        final int realVal = ChatTab.getHistorySize(value);
+        final int realVal = TabSettings.getHistorySize(value);
         if (realVal < 0) {
             return "History: Infinite";
         }
@@ -3,7 +3,10 @@ package nge.lk.mods.simpletabs;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.gui.GuiChat;
 import net.minecraft.client.gui.GuiIngame;
+import net.minecraft.client.multiplayer.GuiConnecting;
+import net.minecraft.client.multiplayer.ServerData;
 import net.minecraftforge.client.event.ClientChatEvent;
+import net.minecraftforge.client.event.GuiOpenEvent;
 import net.minecraftforge.client.event.GuiScreenEvent.MouseInputEvent.Pre;
 import net.minecraftforge.common.MinecraftForge;
 import net.minecraftforge.fml.common.Mod;
@@ -12,6 +15,7 @@ import net.minecraftforge.fml.common.event.FMLInitializationEvent;
 import net.minecraftforge.fml.common.event.FMLPreInitializationEvent;
 import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
 import net.minecraftforge.fml.common.gameevent.TickEvent.PlayerTickEvent;
+import net.minecraftforge.fml.common.network.FMLNetworkEvent.ClientConnectedToServerEvent;
 import net.minecraftforge.fml.relauncher.ReflectionHelper;
 import nge.lk.mods.commonlib.util.DebugUtil;
 import nge.lk.mods.simpletabs.tabs.TabManager;
@@ -50,15 +54,28 @@ public class SimpleTabsMod {
      */
     private File tabStorageFile;
 
+    /**
+     * The directory for the tab configurations of the server profiles.
+     */
+    private File profileDirectory;
+
+    /**
+     * The file containing the rules for extracting message fields.
+     */
+    private File fieldRulesFile;
+
     @EventHandler
     public void onPreInit(final FMLPreInitializationEvent event) {
         DebugUtil.initializeLogger(MODID);
         tabStorageFile = new File(event.getModConfigurationDirectory(), "simpletabs.dat");
+        profileDirectory = new File(event.getModConfigurationDirectory(), "simpletabs-profiles");
+        fieldRulesFile = new File(event.getModConfigurationDirectory(), "simpletabs-fields.dat");
+        TabManager.preloadDefaultProfile(tabStorageFile);
     }
 
     @EventHandler
     public void onInit(final FMLInitializationEvent event) {
-        tabManager = new TabManager(tabStorageFile);
+        tabManager = new TabManager(tabStorageFile, profileDirectory, fieldRulesFile);
         MinecraftForge.EVENT_BUS.register(this);
     }
 
@@ -73,6 +90,23 @@ public class SimpleTabsMod {
         }
     }
 
+    @SubscribeEvent
+    public void onGuiOpen(final GuiOpenEvent event) {
+        // The connecting screen sets the server data, the profile is loaded while the connection is established.
+        final ServerData serverData = Minecraft.getMinecraft().getCurrentServerData();
+        if (event.getGui() instanceof GuiConnecting && serverData != null) {
+            tabManager.preloadProfile(serverData.serverIP);
+        }
+    }
+
+    @SubscribeEvent
+    public void onConnect(final ClientConnectedToServerEvent event) {
+        // Fired on the network thread, the profile is switched on the client thread before any chat is handled.
+        final ServerData serverData = Minecraft.getMinecraft().getCurrentServerData();
+        final String address = event.isLocal() || serverData == null ? null : serverData.serverIP;
+        Minecraft.getMinecraft().addScheduledTask(() -> tabManager.switchProfile(address));
+    }
+
     @SubscribeEvent
     public void onMouse(final Pre event) {
         if (Minecraft.getMinecraft().currentScreen instanceof GuiChat) {
@@ -0,0 +1,65 @@
+package nge.lk.mods.simpletabs.core;
+
+import nge.lk.mods.simpletabs.core.filter.ParsedMessage;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * A bounded least-recently-used cache from messages to the tabs accepting them.
+ *
+ * Repeated messages (broadcasts, join and leave messages, bot output) skip matching entirely. The cache has to be
+ * invalidated whenever the routing table changes.
+ *
+ * @param <T> The type of the tabs.
+ */
+public class ClassificationCache<T> {
+
+    /**
+     * The cached classifications in a {@code Message -> Accepting tabs} mapping, in access order.
+     */
+    private final Map<ParsedMessage, List<T>> entries;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity The maximum number of cached messages.
+     */
+    public ClassificationCache(final int capacity) {
+        entries = new LinkedHashMap<ParsedMessage, List<T>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Entry<ParsedMessage, List<T>> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached classification of a message.
+     *
+     * @param message The message.
+     * @return The accepting tabs, or {@code null} if the message is not cached.
+     */
+    public List<T> get(final ParsedMessage message) {
+        return entries.get(message);
+    }
+
+    /**
+     * Caches the classification of a message.
+     *
+     * @param message       The message.
+     * @param acceptingTabs The accepting tabs, which must not be modified afterwards.
+     */
+    public void put(final ParsedMessage message, final List<T> acceptingTabs) {
+        entries.put(message, acceptingTabs);
+    }
+
+    /**
+     * Drops all cached classifications.
+     */
+    public void invalidate() {
+        entries.clear();
+    }
+}
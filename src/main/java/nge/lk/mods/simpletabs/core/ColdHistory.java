@@ -0,0 +1,583 @@
+package nge.lk.mods.simpletabs.core;
+
+import lombok.Getter;
+import nge.lk.mods.commonlib.util.DebugUtil;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.function.ToIntFunction;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The old part of a {@link LineHistory}, stored in compressed blocks of lines.
+ *
+ * Lines are ordered from the newest to the oldest line. Blocks are created with {@link #BLOCK_SIZE} lines, but edits
+ * change the number of lines of single blocks, so each block records the position of its newest line. Positions count
+ * from a fixed origin below the oldest line, so that trimming the oldest line and adding a newest block don't move the
+ * other blocks. Editing a line only decompresses and compresses its own block. A few decompressed blocks are cached, as
+ * lines are usually read in sequence while scrolling.
+ *
+ * Only the newest blocks are kept on the heap. Older blocks are spilled to a memory-mapped temporary file, so the heap
+ * use of a history is bounded no matter how long its scrollback is. The space of removed blocks is reused, and the
+ * file is deleted as soon as the history is empty.
+ *
+ * @param <L> The type of the lines.
+ */
+final class ColdHistory<L> {
+
+    /**
+     * The number of lines of a new block.
+     */
+    static final int BLOCK_SIZE = 256;
+
+    /**
+     * The number of lines from which on a block which grew by insertions is split.
+     */
+    private static final int MAX_BLOCK_SIZE = 2 * BLOCK_SIZE;
+
+    /**
+     * The estimated size of a block without its data in bytes.
+     */
+    private static final int BLOCK_OVERHEAD = 64;
+
+    /**
+     * The number of decompressed blocks which are cached.
+     */
+    private static final int DECODED_CACHE_SIZE = 4;
+
+    /**
+     * The number of newest blocks which are kept on the heap.
+     */
+    private static final int RESIDENT_BLOCKS = 64;
+
+    /**
+     * Converts lines to and from bytes.
+     */
+    private final LineCodec<L> codec;
+
+    /**
+     * Extracts the ID of a line, or {@code null} if IDs are not tracked.
+     */
+    private final ToIntFunction<? super L> lineId;
+
+    /**
+     * The blocks, ordered from the oldest to the newest block.
+     */
+    private final List<Block> blocks = new ArrayList<>();
+
+    /**
+     * The recently used decompressed blocks, in access order.
+     */
+    private final Map<Block, List<L>> decoded = new LinkedHashMap<Block, List<L>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Entry<Block, List<L>> eldest) {
+            return size() > DECODED_CACHE_SIZE;
+        }
+    };
+
+    /**
+     * The number of lines.
+     */
+    @Getter private int size;
+
+    /**
+     * The estimated size of all blocks in bytes.
+     */
+    @Getter private long bytes;
+
+    /**
+     * The position of the oldest line.
+     */
+    private long origin;
+
+    /**
+     * The file holding the spilled blocks, or {@code null} if no block is spilled.
+     */
+    private SpillFile spillFile;
+
+    /**
+     * Whether spilling failed, in which case all blocks stay on the heap.
+     */
+    private boolean spillFailed;
+
+    /**
+     * The index of the oldest block on the heap. All older blocks are spilled.
+     */
+    private int residentStart;
+
+    /**
+     * Constructor.
+     *
+     * @param codec  Converts lines to and from bytes.
+     * @param lineId Extracts the ID of a line, where {@code 0} means that the line has no ID, or {@code null} if IDs
+     *               are not tracked.
+     */
+    ColdHistory(final LineCodec<L> codec, final ToIntFunction<? super L> lineId) {
+        this.codec = codec;
+        this.lineId = lineId;
+    }
+
+    /**
+     * Returns a line.
+     *
+     * @param index The index of the line, where {@code 0} is the newest line.
+     * @return The line.
+     */
+    L get(final int index) {
+        final Block block = blocks.get(findBlock(index));
+        return decode(block).get(getOffset(block, index));
+    }
+
+    /**
+     * Finds the next line with the given ID, without decompressing blocks.
+     *
+     * @param id   The non-zero line ID.
+     * @param from The index at which the search starts.
+     * @return The index of the line, or {@code -1} if no line from the given index on has the ID.
+     */
+    int indexOfId(final int id, final int from) {
+        if (from >= size) {
+            return -1;
+        }
+        final int first = findBlock(from);
+        for (int i = first; i >= 0; i--) {
+            final Block block = blocks.get(i);
+            if (block.ids == null) {
+                continue;
+            }
+            for (int offset = i == first ? getOffset(block, from) : 0; offset < block.count; offset++) {
+                if (block.ids[offset] == id) {
+                    return (int) (origin + size - block.end) + offset;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Compresses lines into a new block, which becomes the newest block.
+     *
+     * @param lines The lines, ordered from the newest to the oldest line.
+     */
+    void addNewestBlock(final List<L> lines) {
+        final Block block = new Block();
+        size += lines.size();
+        block.end = origin + size;
+        encode(block, lines);
+        blocks.add(block);
+
+        if (blocks.size() - residentStart > RESIDENT_BLOCKS) {
+            spill(blocks.get(residentStart));
+            residentStart++;
+        }
+    }
+
+    /**
+     * Compresses lines into a new block, which becomes the oldest block.
+     *
+     * @param lines The lines, ordered from the newest to the oldest line.
+     */
+    void addOldestBlock(final List<L> lines) {
+        final Block block = new Block();
+        block.end = origin;
+        origin -= lines.size();
+        size += lines.size();
+        encode(block, lines);
+        blocks.add(0, block);
+
+        if (residentStart > 0 || blocks.size() > RESIDENT_BLOCKS) {
+            spill(block);
+            residentStart++;
+        }
+    }
+
+    /**
+     * Replaces a line.
+     *
+     * @param index The index of the line.
+     * @param line  The new line.
+     * @return The replaced line.
+     */
+    L set(final int index, final L line) {
+        final Block block = blocks.get(findBlock(index));
+        final List<L> lines = copyLines(block);
+        final L previous = lines.set(getOffset(block, index), line);
+        reencode(block, lines);
+        return previous;
+    }
+
+    /**
+     * Inserts a line.
+     *
+     * @param index The index at which the line is inserted, up to the number of lines.
+     * @param line  The line.
+     */
+    void add(final int index, final L line) {
+        if (index == size) {
+            final Block oldest = blocks.get(0);
+            if (oldest.count >= BLOCK_SIZE) {
+                final List<L> lines = new ArrayList<>(1);
+                lines.add(line);
+                addOldestBlock(lines);
+                return;
+            }
+            final List<L> lines = copyLines(oldest);
+            lines.add(line);
+            origin--;
+            size++;
+            reencode(oldest, lines);
+            return;
+        }
+
+        final int blockIndex = findBlock(index);
+        final Block block = blocks.get(blockIndex);
+        final List<L> lines = copyLines(block);
+        lines.add(getOffset(block, index), line);
+        shiftEnds(blockIndex, 1);
+        size++;
+        if (lines.size() < MAX_BLOCK_SIZE) {
+            reencode(block, lines);
+            return;
+        }
+
+        // Split the block, so it doesn't grow without bound.
+        final Block older = new Block();
+        older.end = block.end - BLOCK_SIZE;
+        encode(older, new ArrayList<>(lines.subList(BLOCK_SIZE, lines.size())));
+        blocks.add(blockIndex, older);
+        if (blockIndex < residentStart) {
+            spill(older);
+            residentStart++;
+        }
+        reencode(block, new ArrayList<>(lines.subList(0, BLOCK_SIZE)));
+    }
+
+    /**
+     * Removes a line.
+     *
+     * @param index The index of the line.
+     * @return The removed line.
+     */
+    L remove(final int index) {
+        final int blockIndex = findBlock(index);
+        final Block block = blocks.get(blockIndex);
+        final int offset = getOffset(block, index);
+        final L line = decode(block).get(offset);
+        size--;
+
+        if (block.count == 1) {
+            if (blockIndex == 0) {
+                origin++;
+            } else {
+                shiftEnds(blockIndex + 1, -1);
+            }
+            removeBlock(blockIndex);
+        } else if (blockIndex == 0 && offset == block.count - 1) {
+            // Trimming the oldest line only forgets it, releasing the block's size evenly across its lines.
+            final int share = block.bytes / block.count;
+            block.bytes -= share;
+            bytes -= share;
+            block.count--;
+            origin++;
+        } else {
+            final List<L> lines = copyLines(block);
+            lines.remove(offset);
+            shiftEnds(blockIndex, -1);
+            reencode(block, lines);
+        }
+        return line;
+    }
+
+    /**
+     * Removes all lines and deletes the spill file.
+     */
+    void clear() {
+        blocks.clear();
+        decoded.clear();
+        size = 0;
+        bytes = 0;
+        origin = 0;
+        residentStart = 0;
+        closeSpillFile();
+    }
+
+    /**
+     * Finds the block of a line.
+     *
+     * @param index The index of the line.
+     * @return The index of the block.
+     */
+    private int findBlock(final int index) {
+        final long position = origin + size - 1 - index;
+        int low = 0;
+        int high = blocks.size() - 1;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (blocks.get(middle).end > position) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the offset of a line in its block.
+     *
+     * @param block The block.
+     * @param index The index of the line.
+     * @return The offset, where {@code 0} is the newest line of the block.
+     */
+    private int getOffset(final Block block, final int index) {
+        return (int) (block.end - (origin + size - index));
+    }
+
+    /**
+     * Moves the positions of a block and all newer blocks.
+     *
+     * @param from  The index of the oldest block to move.
+     * @param delta The number of lines which were inserted or removed.
+     */
+    private void shiftEnds(final int from, final int delta) {
+        for (int i = from; i < blocks.size(); i++) {
+            blocks.get(i).end += delta;
+        }
+    }
+
+    /**
+     * Returns a modifiable copy of the lines of a block.
+     *
+     * @param block The block.
+     * @return The lines, ordered from the newest to the oldest line.
+     */
+    private List<L> copyLines(final Block block) {
+        return new ArrayList<>(decode(block).subList(0, block.count));
+    }
+
+    /**
+     * Replaces the lines of a block, keeping it spilled if it was.
+     *
+     * @param block The block.
+     * @param lines The new lines, ordered from the newest to the oldest line.
+     */
+    private void reencode(final Block block, final List<L> lines) {
+        final boolean spilled = block.data == null;
+        final long position = block.position;
+        final int length = block.length;
+        bytes -= block.bytes;
+        encode(block, lines);
+        if (spilled) {
+            spill(block);
+            spillFile.free(position, length);
+            compactSpillFile();
+        }
+    }
+
+    /**
+     * Compresses lines into a block on the heap.
+     *
+     * @param block The block.
+     * @param lines The lines, ordered from the newest to the oldest line.
+     */
+    private void encode(final Block block, final List<L> lines) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (final DataOutputStream data = new DataOutputStream(new DeflaterOutputStream(out, deflater))) {
+            for (final L line : lines) {
+                codec.write(line, data);
+            }
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            deflater.end();
+        }
+
+        int[] ids = null;
+        for (int i = 0; lineId != null && i < lines.size(); i++) {
+            final int id = lineId.applyAsInt(lines.get(i));
+            if (id != 0) {
+                if (ids == null) {
+                    ids = new int[lines.size()];
+                }
+                ids[i] = id;
+            }
+        }
+
+        block.data = out.toByteArray();
+        block.ids = ids;
+        block.count = lines.size();
+        block.encodedCount = lines.size();
+        block.bytes = BLOCK_OVERHEAD + block.data.length + (ids == null ? 0 : 4 * ids.length);
+        bytes += block.bytes;
+        decoded.put(block, lines);
+    }
+
+    /**
+     * Removes a block, freeing its space in the spill file.
+     *
+     * @param index The index of the block.
+     */
+    private void removeBlock(final int index) {
+        final Block block = blocks.remove(index);
+        decoded.remove(block);
+        bytes -= block.bytes;
+        if (index < residentStart) {
+            residentStart--;
+        }
+
+        if (blocks.isEmpty()) {
+            origin = 0;
+            residentStart = 0;
+            closeSpillFile();
+        } else if (block.data == null) {
+            spillFile.free(block.position, block.length);
+            compactSpillFile();
+        }
+    }
+
+    /**
+     * Moves the data of a block from the heap to the spill file.
+     *
+     * @param block The block.
+     */
+    private void spill(final Block block) {
+        if (spillFailed || block.data.length > SpillFile.SEGMENT_SIZE) {
+            return;
+        }
+        try {
+            if (spillFile == null) {
+                spillFile = new SpillFile();
+            }
+            block.position = spillFile.append(block.data);
+        } catch (final IOException e) {
+            DebugUtil.recoverableError(e);
+            spillFailed = true;
+            return;
+        }
+
+        block.length = block.data.length;
+        block.data = null;
+        final int released = Math.max(0, block.bytes - BLOCK_OVERHEAD - (block.ids == null ? 0 : 4 * block.ids.length));
+        block.bytes -= released;
+        bytes -= released;
+    }
+
+    /**
+     * Moves the spilled blocks out of a segment of the spill file which is mostly freed, so it can be reused.
+     */
+    private void compactSpillFile() {
+        final int segment = spillFile.getSparseSegment();
+        if (segment < 0) {
+            return;
+        }
+        for (final Block block : blocks) {
+            if (block.data == null && SpillFile.getSegment(block.position) == segment) {
+                try {
+                    final long position = spillFile.append(spillFile.read(block.position, block.length));
+                    spillFile.free(block.position, block.length);
+                    block.position = position;
+                } catch (final IOException e) {
+                    DebugUtil.recoverableError(e);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Unmaps and deletes the spill file.
+     */
+    private void closeSpillFile() {
+        if (spillFile == null) {
+            return;
+        }
+        try {
+            spillFile.close();
+        } catch (final IOException e) {
+            DebugUtil.recoverableError(e);
+        }
+        spillFile = null;
+    }
+
+    /**
+     * Returns the decompressed lines of a block.
+     *
+     * @param block The block.
+     * @return The lines, ordered from the newest to the oldest line. Lines from the block's count on were removed.
+     */
+    private List<L> decode(final Block block) {
+        List<L> lines = decoded.get(block);
+        if (lines == null) {
+            lines = new ArrayList<>(block.encodedCount);
+            final byte[] data = block.data != null ? block.data : spillFile.read(block.position, block.length);
+            try (final DataInputStream in = new DataInputStream(
+                    new InflaterInputStream(new ByteArrayInputStream(data)))) {
+                for (int i = 0; i < block.encodedCount; i++) {
+                    lines.add(codec.read(in));
+                }
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            decoded.put(block, lines);
+        }
+        return lines;
+    }
+
+    /**
+     * A compressed block of lines.
+     */
+    private static final class Block {
+
+        /**
+         * The compressed lines, or {@code null} if they were spilled.
+         */
+        private byte[] data;
+
+        /**
+         * The position of the compressed lines in the spill file, if they were spilled.
+         */
+        private long position;
+
+        /**
+         * The length of the compressed lines in the spill file, if they were spilled.
+         */
+        private int length;
+
+        /**
+         * The line IDs of the lines, or {@code null} if all lines have no ID.
+         */
+        private int[] ids;
+
+        /**
+         * The number of compressed lines.
+         */
+        private int encodedCount;
+
+        /**
+         * The number of lines which were not removed yet. Removed lines are at the end.
+         */
+        private int count;
+
+        /**
+         * The position after the newest line of the block.
+         */
+        private long end;
+
+        /**
+         * The estimated size of the block in bytes which was not released yet.
+         */
+        private int bytes;
+    }
+}
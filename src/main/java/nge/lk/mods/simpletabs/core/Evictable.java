@@ -0,0 +1,36 @@
+package nge.lk.mods.simpletabs.core;
+
+/**
+ * A tab whose history counts against a {@link MemoryBudget}.
+ */
+public interface Evictable {
+
+    /**
+     * Returns the estimated memory used by the history of this tab.
+     *
+     * @return The estimated size in bytes.
+     */
+    long getUsedBytes();
+
+    /**
+     * Returns when this tab was viewed last.
+     *
+     * @return The time in the {@link System#nanoTime()} scale, or {@code 0} if the tab was never viewed.
+     */
+    long getLastViewed();
+
+    /**
+     * Checks whether the oldest message of this tab is also held by another tab, so that dropping it only frees the
+     * reference of this tab.
+     *
+     * @return Whether the oldest message is shared, {@code false} if there is none.
+     */
+    boolean isOldestShared();
+
+    /**
+     * Drops the oldest message of this tab.
+     *
+     * @return Whether there was a message to drop.
+     */
+    boolean evictOldest();
+}
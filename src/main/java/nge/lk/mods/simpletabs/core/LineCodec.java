@@ -0,0 +1,31 @@
+package nge.lk.mods.simpletabs.core;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Converts lines to and from bytes, for storing them compactly.
+ *
+ * @param <L> The type of the lines.
+ */
+public interface LineCodec<L> {
+
+    /**
+     * Writes a line.
+     *
+     * @param line The line.
+     * @param out  The output.
+     * @throws IOException If writing fails.
+     */
+    void write(L line, DataOutput out) throws IOException;
+
+    /**
+     * Reads a line which was written by {@link #write}.
+     *
+     * @param in The input.
+     * @return The line.
+     * @throws IOException If reading fails.
+     */
+    L read(DataInput in) throws IOException;
+}
@@ -0,0 +1,545 @@
+package nge.lk.mods.simpletabs.core;
+
+import lombok.Getter;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.function.ToIntFunction;
+
+/**
+ * The history of a tab, ordered from the newest to the oldest line.
+ *
+ * Backed by a ring buffer, so adding the newest line and dropping the oldest line are constant time operations.
+ * Insertions and removals in between move the shorter side of the buffer. If line IDs are tracked, the number of lines
+ * per ID is indexed so that deleting lines by ID only looks at histories which contain that ID. If line sizes are
+ * tracked, the estimated size of all lines is kept up to date and counted against a {@link MemoryBudget}. Lines which
+ * are {@link SharedLine shared} with other histories only count their reference, and their content is counted once
+ * while any history holds them as objects.
+ *
+ * If a codec is given, only the newest lines are kept as objects. Older lines are compressed in blocks, which are
+ * decompressed when the lines are read. Inserting, replacing or removing a compressed line compresses its block again,
+ * and older lines which are added in bulk are compressed into new blocks right away.
+ *
+ * @param <L> The type of the lines.
+ */
+public class LineHistory<L> extends AbstractList<L> implements RandomAccess {
+
+    /**
+     * The initial capacity of the ring buffer. Must be a power of two.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * The number of newest lines which are never compressed.
+     */
+    private static final int HOT_LINES = 1024;
+
+    /**
+     * The ring buffer. The length is always a power of two.
+     */
+    private Object[] elements = new Object[INITIAL_CAPACITY];
+
+    /**
+     * The position of the newest line in the ring buffer.
+     */
+    private int head;
+
+    /**
+     * The number of lines in the ring buffer.
+     */
+    private int size;
+
+    /**
+     * The compressed lines, which are older than the lines in the ring buffer, or {@code null} if there is no codec.
+     */
+    private final ColdHistory<L> cold;
+
+    /**
+     * Extracts the ID of a line, or {@code null} if IDs are not tracked.
+     */
+    private final ToIntFunction<? super L> lineId;
+
+    /**
+     * The number of lines for each non-zero line ID in a {@code ID -> Count} mapping.
+     */
+    private final Map<Integer, Integer> idCounts = new HashMap<>();
+
+    /**
+     * Estimates the size of a line in bytes, or {@code null} if sizes are not tracked.
+     */
+    private final ToIntFunction<? super L> lineSize;
+
+    /**
+     * The budget the lines count against, or {@code null}.
+     */
+    private final MemoryBudget budget;
+
+    /**
+     * The estimated size of all lines in bytes, or {@code 0} if sizes are not tracked.
+     */
+    @Getter private long bytes;
+
+    /**
+     * Constructor for a history without line IDs.
+     */
+    public LineHistory() {
+        this(null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param lineId Extracts the ID of a line, where {@code 0} means that the line has no ID.
+     */
+    public LineHistory(final ToIntFunction<? super L> lineId) {
+        this(lineId, null, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param lineId   Extracts the ID of a line, where {@code 0} means that the line has no ID.
+     * @param lineSize Estimates the size of a line in bytes, or {@code null} if sizes are not tracked.
+     * @param budget   The budget the lines count against, or {@code null}.
+     */
+    public LineHistory(final ToIntFunction<? super L> lineId, final ToIntFunction<? super L> lineSize,
+                       final MemoryBudget budget) {
+        this(lineId, lineSize, budget, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param lineId   Extracts the ID of a line, where {@code 0} means that the line has no ID.
+     * @param lineSize Estimates the size of a line in bytes, or {@code null} if sizes are not tracked.
+     * @param budget   The budget the lines count against, or {@code null}.
+     * @param codec    Converts lines to and from bytes for compressing old lines, or {@code null}.
+     */
+    public LineHistory(final ToIntFunction<? super L> lineId, final ToIntFunction<? super L> lineSize,
+                       final MemoryBudget budget, final LineCodec<L> codec) {
+        this.lineId = lineId;
+        this.lineSize = lineSize;
+        this.budget = budget;
+        cold = codec == null ? null : new ColdHistory<>(codec, lineId);
+    }
+
+    /**
+     * Adds a line as the newest line.
+     *
+     * @param line The line.
+     */
+    public void addNewest(final L line) {
+        add(0, line);
+    }
+
+    /**
+     * Removes the oldest line.
+     *
+     * @return The removed line.
+     */
+    public L removeOldest() {
+        return remove(size() - 1);
+    }
+
+    /**
+     * Checks whether the oldest line is a {@link SharedLine shared line} which other histories hold as well, so that
+     * removing it only frees the reference. Compressed lines are copies which only this history holds.
+     *
+     * @return Whether the oldest line is shared, {@code false} if there is none.
+     */
+    public boolean isOldestShared() {
+        if (size == 0 || cold != null && cold.getSize() > 0) {
+            return false;
+        }
+        final Object line = elements[slot(size - 1)];
+        return line instanceof SharedLine && ((SharedLine) line).getHolders() > 1;
+    }
+
+    /**
+     * Removes all lines with the given ID.
+     *
+     * Replaced lines are usually recent, so the search starts at the newest line and stops as soon as all lines with
+     * the ID are found.
+     *
+     * @param id The non-zero line ID.
+     */
+    public void removeLinesWithId(final int id) {
+        final Integer count = idCounts.get(id);
+        if (count == null) {
+            return;
+        }
+
+        int remaining = count;
+        for (int i = 0; remaining > 0 && i < size; ) {
+            if (lineId.applyAsInt(get(i)) == id) {
+                remove(i);
+                remaining--;
+            } else {
+                i++;
+            }
+        }
+
+        // The compressed blocks know the IDs of their lines, so only the blocks with matching lines are decompressed.
+        for (int i = 0; remaining > 0 && cold != null; remaining--) {
+            i = cold.indexOfId(id, i);
+            if (i < 0) {
+                break;
+            }
+            remove(size + i);
+        }
+    }
+
+    /**
+     * Checks whether a line with the given ID exists.
+     *
+     * @param id The non-zero line ID.
+     * @return Whether there is a line with the ID.
+     */
+    public boolean containsLineId(final int id) {
+        return idCounts.containsKey(id);
+    }
+
+    /**
+     * Drops the oldest lines until at most the given number of lines remains.
+     *
+     * @param limit The maximum number of lines, or {@link TabSettings#HISTORY_INFINITE}.
+     */
+    public void trimTo(final int limit) {
+        if (limit == TabSettings.HISTORY_INFINITE) {
+            return;
+        }
+        while (size() > limit) {
+            removeOldest();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public L get(final int index) {
+        checkIndex(index, size());
+        if (index >= size) {
+            return cold.get(index - size);
+        }
+        return (L) elements[slot(index)];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public L set(final int index, final L element) {
+        checkIndex(index, size());
+        if (index >= size) {
+            final long blockBytes = cold.getBytes();
+            final L previous = cold.set(index - size, element);
+            untrackId(previous);
+            trackId(element);
+            modCount++;
+            adjustColdBytes(blockBytes);
+            return previous;
+        }
+        final int slot = slot(index);
+        final L previous = (L) elements[slot];
+        elements[slot] = element;
+        untrack(previous);
+        track(element);
+        return previous;
+    }
+
+    @Override
+    public void add(final int index, final L element) {
+        checkIndex(index, size() + 1);
+        if (index > size) {
+            final long blockBytes = cold.getBytes();
+            cold.add(index - size, element);
+            trackId(element);
+            modCount++;
+            adjustColdBytes(blockBytes);
+            return;
+        }
+        if (size == elements.length) {
+            grow();
+        }
+
+        if (index < size / 2 || index == 0) {
+            // Move the lines in front of the insertion point forward by one.
+            head = (head - 1) & (elements.length - 1);
+            for (int i = 0; i < index; i++) {
+                elements[slot(i)] = elements[slot(i + 1)];
+            }
+        } else {
+            // Move the lines behind the insertion point back by one.
+            for (int i = size; i > index; i--) {
+                elements[slot(i)] = elements[slot(i - 1)];
+            }
+        }
+        elements[slot(index)] = element;
+        size++;
+        modCount++;
+        track(element);
+
+        while (cold != null && size >= HOT_LINES + ColdHistory.BLOCK_SIZE) {
+            freeze();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public L remove(final int index) {
+        checkIndex(index, size());
+        if (index >= size) {
+            final long blockBytes = cold.getBytes();
+            final L removed = cold.remove(index - size);
+            untrackId(removed);
+            modCount++;
+            adjustColdBytes(blockBytes);
+            return removed;
+        }
+        final L removed = (L) elements[slot(index)];
+        if (index < size / 2 || index == 0) {
+            // Move the lines in front of the removed line back by one.
+            for (int i = index; i > 0; i--) {
+                elements[slot(i)] = elements[slot(i - 1)];
+            }
+            elements[head] = null;
+            head = (head + 1) & (elements.length - 1);
+        } else {
+            // Move the lines behind the removed line forward by one.
+            for (int i = index; i < size - 1; i++) {
+                elements[slot(i)] = elements[slot(i + 1)];
+            }
+            elements[slot(size - 1)] = null;
+        }
+        size--;
+        modCount++;
+        untrack(removed);
+        return removed;
+    }
+
+    /**
+     * Adds lines, compressing the lines which are older than all compressed lines into blocks right away instead of
+     * inserting them one by one.
+     *
+     * @param index The index of the first added line.
+     * @param lines The lines, ordered from the newest to the oldest line.
+     * @return Whether lines were added.
+     */
+    @Override
+    public boolean addAll(final int index, final Collection<? extends L> lines) {
+        checkIndex(index, size() + 1);
+        if (cold == null || index != size()) {
+            return super.addAll(index, lines);
+        }
+
+        final Iterator<? extends L> iterator = lines.iterator();
+        while (iterator.hasNext() && cold.getSize() == 0) {
+            add(size(), iterator.next());
+        }
+        final long blockBytes = cold.getBytes();
+        while (iterator.hasNext()) {
+            final List<L> block = new ArrayList<>(ColdHistory.BLOCK_SIZE);
+            while (iterator.hasNext() && block.size() < ColdHistory.BLOCK_SIZE) {
+                final L line = iterator.next();
+                block.add(line);
+                trackId(line);
+            }
+            cold.addOldestBlock(block);
+            modCount++;
+        }
+        adjustColdBytes(blockBytes);
+        return !lines.isEmpty();
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            @SuppressWarnings("unchecked") final L line = (L) elements[slot(i)];
+            releaseShared(line);
+        }
+        Arrays.fill(elements, null);
+        head = 0;
+        size = 0;
+        modCount++;
+        idCounts.clear();
+        if (cold != null) {
+            cold.clear();
+        }
+        if (budget != null) {
+            budget.adjust(-bytes);
+        }
+        bytes = 0;
+    }
+
+    @Override
+    public int size() {
+        return cold == null ? size : size + cold.getSize();
+    }
+
+    /**
+     * Converts a list index into a ring buffer position.
+     *
+     * @param index The list index.
+     * @return The ring buffer position.
+     */
+    private int slot(final int index) {
+        return (head + index) & (elements.length - 1);
+    }
+
+    /**
+     * Counts a line which was added to the history.
+     *
+     * @param line The line.
+     */
+    private void track(final L line) {
+        trackId(line);
+        if (lineSize != null) {
+            adjustBytes(lineSize.applyAsInt(line));
+            if (line instanceof SharedLine) {
+                adjustSharedBytes(((SharedLine) line).retain());
+            }
+        }
+    }
+
+    /**
+     * Uncounts a line which was removed from the history.
+     *
+     * @param line The line.
+     */
+    private void untrack(final L line) {
+        untrackId(line);
+        if (lineSize != null) {
+            adjustBytes(-lineSize.applyAsInt(line));
+        }
+        releaseShared(line);
+    }
+
+    /**
+     * Drops the reference of this history to a shared line, whose content is uncounted if no other history holds it.
+     *
+     * @param line The line, which is ignored if it is not shared.
+     */
+    private void releaseShared(final L line) {
+        if (lineSize != null && line instanceof SharedLine) {
+            adjustSharedBytes(-((SharedLine) line).release());
+        }
+    }
+
+    /**
+     * Counts the line ID of a line which was added to the history.
+     *
+     * @param line The line.
+     */
+    private void trackId(final L line) {
+        if (lineId != null) {
+            final int id = lineId.applyAsInt(line);
+            if (id != 0) {
+                idCounts.merge(id, 1, Integer::sum);
+            }
+        }
+    }
+
+    /**
+     * Uncounts the line ID of a line which was removed from the history.
+     *
+     * @param line The line.
+     */
+    private void untrackId(final L line) {
+        if (lineId != null) {
+            final int id = lineId.applyAsInt(line);
+            if (id != 0) {
+                idCounts.computeIfPresent(id, (key, count) -> count == 1 ? null : count - 1);
+            }
+        }
+    }
+
+    /**
+     * Compresses the oldest lines of the ring buffer into a block. Line IDs stay counted.
+     */
+    private void freeze() {
+        final List<L> lines = new ArrayList<>(ColdHistory.BLOCK_SIZE);
+        long freed = 0;
+        for (int i = size - ColdHistory.BLOCK_SIZE; i < size; i++) {
+            @SuppressWarnings("unchecked") final L line = (L) elements[slot(i)];
+            elements[slot(i)] = null;
+            lines.add(line);
+            if (lineSize != null) {
+                freed += lineSize.applyAsInt(line);
+            }
+
+            // The block holds a compressed copy instead of the shared line.
+            releaseShared(line);
+        }
+        size -= ColdHistory.BLOCK_SIZE;
+        modCount++;
+
+        final long blockBytes = cold.getBytes();
+        cold.addNewestBlock(lines);
+        if (lineSize != null) {
+            adjustBytes(-freed);
+        }
+        adjustColdBytes(blockBytes);
+    }
+
+    /**
+     * Accounts for a change of the compressed blocks.
+     *
+     * @param previousBytes The estimated size of the blocks before the change in bytes.
+     */
+    private void adjustColdBytes(final long previousBytes) {
+        if (lineSize != null) {
+            adjustBytes(cold.getBytes() - previousBytes);
+        }
+    }
+
+    /**
+     * Accounts for lines which were added or removed.
+     *
+     * @param delta The change of the size in bytes.
+     */
+    private void adjustBytes(final long delta) {
+        bytes += delta;
+        if (budget != null) {
+            budget.adjust(delta);
+        }
+    }
+
+    /**
+     * Accounts for the contents of shared lines which started or stopped being held by any history.
+     *
+     * @param delta The change of the size in bytes.
+     */
+    private void adjustSharedBytes(final long delta) {
+        if (budget != null) {
+            budget.adjustShared(delta);
+        }
+    }
+
+    /**
+     * Doubles the capacity of the ring buffer.
+     */
+    private void grow() {
+        final Object[] grown = new Object[elements.length << 1];
+        for (int i = 0; i < size; i++) {
+            grown[i] = elements[slot(i)];
+        }
+        elements = grown;
+        head = 0;
+    }
+
+    /**
+     * Checks that an index is in the given bounds.
+     *
+     * @param index The index.
+     * @param bound The exclusive upper bound.
+     */
+    private void checkIndex(final int index, final int bound) {
+        if (index < 0 || index >= bound) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package nge.lk.mods.simpletabs.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+
+/**
+ * Remembers which tabs received lines with a given line ID, so that replacing or deleting a line only touches those
+ * tabs.
+ *
+ * @param <T> The type of the tabs.
+ */
+public class LineIdIndex<T> {
+
+    /**
+     * The lowest number of indexed line IDs at which stale entries are pruned.
+     */
+    private static final int MIN_PRUNE_THRESHOLD = 64;
+
+    /**
+     * The tabs holding lines for each non-zero line ID in a {@code ID -> Tabs} mapping.
+     */
+    private final Map<Integer, List<T>> holders = new HashMap<>();
+
+    /**
+     * Checks whether a tab still holds lines with a line ID. Lines can disappear without a deletion, e.g. by trimming.
+     */
+    private final BiPredicate<T, Integer> stillHolds;
+
+    /**
+     * The number of indexed line IDs at which stale entries are pruned next.
+     */
+    private int pruneThreshold = MIN_PRUNE_THRESHOLD;
+
+    /**
+     * Constructor.
+     *
+     * @param stillHolds Checks whether a tab still holds lines with a line ID.
+     */
+    public LineIdIndex(final BiPredicate<T, Integer> stillHolds) {
+        this.stillHolds = stillHolds;
+    }
+
+    /**
+     * Records that a tab received a line with the given ID.
+     *
+     * @param id  The line ID.
+     * @param tab The tab.
+     */
+    public void add(final int id, final T tab) {
+        if (id == 0) {
+            return;
+        }
+
+        final List<T> tabs = holders.computeIfAbsent(id, key -> new ArrayList<>(1));
+        if (!tabs.contains(tab)) {
+            tabs.add(tab);
+        }
+
+        if (holders.size() >= pruneThreshold) {
+            prune();
+        }
+    }
+
+    /**
+     * Removes the line ID from the index, passing all tabs which received lines with that ID to the deleter.
+     *
+     * @param id      The line ID.
+     * @param deleter Deletes the lines from a tab.
+     */
+    public void remove(final int id, final Consumer<? super T> deleter) {
+        final List<T> tabs = holders.remove(id);
+        if (tabs != null) {
+            tabs.forEach(deleter);
+        }
+    }
+
+    /**
+     * Removes a tab from the index, e.g. after it was deleted.
+     *
+     * @param tab The tab.
+     */
+    public void removeTab(final T tab) {
+        final Iterator<List<T>> iterator = holders.values().iterator();
+        while (iterator.hasNext()) {
+            final List<T> tabs = iterator.next();
+            tabs.remove(tab);
+            if (tabs.isEmpty()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Forgets all line IDs.
+     */
+    public void clear() {
+        holders.clear();
+        pruneThreshold = MIN_PRUNE_THRESHOLD;
+    }
+
+    /**
+     * Drops the tabs which no longer hold lines with their indexed line ID. The threshold for the next pruning grows
+     * with the number of surviving entries, so pruning is amortized constant time per added line.
+     */
+    private void prune() {
+        final Iterator<Entry<Integer, List<T>>> iterator = holders.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Entry<Integer, List<T>> entry = iterator.next();
+            entry.getValue().removeIf(tab -> !stillHolds.test(tab, entry.getKey()));
+            if (entry.getValue().isEmpty()) {
+                iterator.remove();
+            }
+        }
+        pruneThreshold = Math.max(MIN_PRUNE_THRESHOLD, holders.size() * 2);
+    }
+}
@@ -0,0 +1,137 @@
+package nge.lk.mods.simpletabs.core;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A global limit on the estimated memory used by the histories of all tabs.
+ *
+ * If the limit is exceeded, the oldest messages of the least recently viewed tabs are dropped first, until the usage
+ * is a bit below the limit again, so that eviction doesn't run for every message. Tabs are only drained while that
+ * frees memory: the content of a message which other tabs hold as well is freed by the last tab dropping it, so such
+ * messages are dropped only if no tab has a message of its own left to drop.
+ */
+public class MemoryBudget {
+
+    /**
+     * The fraction of the limit to which the usage is reduced when the limit is exceeded.
+     */
+    private static final double EVICTION_TARGET = 0.9;
+
+    /**
+     * The limit in bytes.
+     */
+    @Getter private final long limit;
+
+    /**
+     * The estimated memory used by all tracked histories in bytes.
+     */
+    @Getter private long usedBytes;
+
+    /**
+     * The estimated memory used by the contents of {@link SharedLine shared lines} in bytes, which is part of the used
+     * memory but not of any single history.
+     */
+    @Getter private long sharedBytes;
+
+    /**
+     * Constructor.
+     *
+     * @param limit The limit in bytes.
+     */
+    public MemoryBudget(final long limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * Creates a budget of a sixteenth of the maximum heap size.
+     *
+     * @return The budget.
+     */
+    public static MemoryBudget createDefault() {
+        return new MemoryBudget(Runtime.getRuntime().maxMemory() / 16);
+    }
+
+    /**
+     * Checks whether the limit is exceeded.
+     *
+     * @return Whether the usage is above the limit.
+     */
+    public boolean isExceeded() {
+        return usedBytes > limit;
+    }
+
+    /**
+     * Drops messages until the usage is below the limit, if it is exceeded.
+     *
+     * @param tabs      All tabs.
+     * @param viewedTab The tab which is currently viewed, which loses messages last, or {@code null}.
+     */
+    public void enforce(final Collection<? extends Evictable> tabs, final Evictable viewedTab) {
+        if (!isExceeded()) {
+            return;
+        }
+
+        final List<Evictable> candidates = new ArrayList<>(tabs);
+        candidates.remove(viewedTab);
+        candidates.sort(Comparator.comparingLong(Evictable::getLastViewed));
+        if (viewedTab != null) {
+            candidates.add(viewedTab);
+        }
+
+        final long target = (long) (limit * EVICTION_TARGET);
+        while (usedBytes > target) {
+            for (final Evictable tab : candidates) {
+                while (usedBytes > target && !tab.isOldestShared()) {
+                    if (!tab.evictOldest()) {
+                        // Continue with the next tab.
+                        break;
+                    }
+                }
+            }
+            if (usedBytes <= target || !evictShared(candidates)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Drops the oldest message of the first tab which has one, once all tabs only have messages at their oldest end
+     * which other tabs hold as well. This frees only a reference, but brings the message closer to being freed by the
+     * last tab holding it.
+     *
+     * @param candidates The tabs in eviction order.
+     * @return Whether a message was dropped.
+     */
+    private static boolean evictShared(final List<Evictable> candidates) {
+        for (final Evictable tab : candidates) {
+            if (tab.evictOldest()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Accounts for memory which was allocated or freed.
+     *
+     * @param bytes The number of allocated bytes, negative if memory was freed.
+     */
+    void adjust(final long bytes) {
+        usedBytes += bytes;
+    }
+
+    /**
+     * Accounts for the contents of shared lines which started or stopped being held by any history.
+     *
+     * @param bytes The number of allocated bytes, negative if memory was freed.
+     */
+    void adjustShared(final long bytes) {
+        usedBytes += bytes;
+        sharedBytes += bytes;
+    }
+}
@@ -0,0 +1,149 @@
+package nge.lk.mods.simpletabs.core;
+
+import lombok.Getter;
+import nge.lk.mods.simpletabs.core.filter.FilterContext;
+import nge.lk.mods.simpletabs.core.filter.FilterNode;
+import nge.lk.mods.simpletabs.core.filter.ParsedMessage;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A bounded log of the most recent messages, independent of the tabs, for filling the history of new or edited tabs.
+ *
+ * The log is only modified on the client thread. Matching runs in the background against a copy of the log.
+ *
+ * @param <E> The type of the logged lines.
+ */
+public class MessageLog<E> {
+
+    /**
+     * The maximum number of logged messages.
+     */
+    private final int capacity;
+
+    /**
+     * The logged messages, oldest first.
+     */
+    private final Deque<Entry<E>> entries = new ArrayDeque<>();
+
+    /**
+     * Constructor.
+     *
+     * @param capacity The maximum number of logged messages.
+     */
+    public MessageLog(final int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Logs a message as the newest message, dropping the oldest message if the log is full.
+     *
+     * @param message The message.
+     * @param lineId  The line ID of the message, or {@code 0}.
+     * @param line    The logged line.
+     * @return The entry of the message.
+     */
+    public Entry<E> append(final ParsedMessage message, final int lineId, final E line) {
+        if (entries.size() == capacity) {
+            entries.removeFirst();
+        }
+        final Entry<E> entry = new Entry<>(message, lineId, line);
+        entries.addLast(entry);
+        return entry;
+    }
+
+    /**
+     * Removes the messages with the given line ID, after they were deleted or replaced.
+     *
+     * @param lineId The non-zero line ID.
+     */
+    public void removeLineId(final int lineId) {
+        final Iterator<Entry<E>> iterator = entries.iterator();
+        while (iterator.hasNext()) {
+            final Entry<E> entry = iterator.next();
+            if (entry.lineId == lineId) {
+                entry.removed = true;
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes all messages.
+     */
+    public void clear() {
+        for (final Entry<E> entry : entries) {
+            entry.removed = true;
+        }
+        entries.clear();
+    }
+
+    /**
+     * Finds the logged messages which a filter accepts. The log is copied on the calling thread and matched in the
+     * background, so messages logged later are not considered.
+     *
+     * @param filter    The filter.
+     * @param whitelist Whether the filter selects the accepted or the rejected messages.
+     * @return The accepted entries, oldest first. Entries may be {@link Entry#isRemoved() removed} by the time the
+     * result is used.
+     */
+    public CompletableFuture<List<Entry<E>>> match(final FilterNode filter, final boolean whitelist) {
+        final List<Entry<E>> snapshot = new ArrayList<>(entries);
+        return CompletableFuture.supplyAsync(() -> {
+            final List<Entry<E>> accepted = new ArrayList<>();
+            for (final Entry<E> entry : snapshot) {
+                if (filter.evaluate(FilterContext.forMessage(entry.message)) == whitelist) {
+                    accepted.add(entry);
+                }
+            }
+            return accepted;
+        });
+    }
+
+    /**
+     * A logged message.
+     *
+     * @param <E> The type of the logged line.
+     */
+    public static final class Entry<E> {
+
+        /**
+         * The message.
+         */
+        @Getter private final ParsedMessage message;
+
+        /**
+         * The line ID of the message, or {@code 0}.
+         */
+        @Getter private final int lineId;
+
+        /**
+         * The logged line.
+         */
+        @Getter private final E line;
+
+        /**
+         * Whether the message was removed from the log because its line was deleted or replaced. Only accessed on the
+         * client thread.
+         */
+        @Getter private boolean removed;
+
+        /**
+         * Constructor.
+         *
+         * @param message The message.
+         * @param lineId  The line ID of the message, or {@code 0}.
+         * @param line    The logged line.
+         */
+        private Entry(final ParsedMessage message, final int lineId, final E line) {
+            this.message = message;
+            this.lineId = lineId;
+            this.line = line;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package nge.lk.mods.simpletabs.core;
+
+/**
+ * Normalizes chat messages before they are matched against tab filters.
+ */
+public final class MessageNormalizer {
+
+    /**
+     * The character which introduces a formatting code.
+     */
+    private static final char FORMATTING_CODE = '§';
+
+    /**
+     * Removes all formatting codes from the given message.
+     *
+     * @param message The message, possibly containing formatting codes.
+     * @return The plain message.
+     */
+    public static String stripFormatting(final String message) {
+        if (message.indexOf(FORMATTING_CODE) < 0) {
+            // Nothing to strip, avoid copying the message.
+            return message;
+        }
+
+        final StringBuilder plainBuilder = new StringBuilder(message.length());
+        boolean isEscape = false;
+        for (int i = 0; i < message.length(); i++) {
+            final char c = message.charAt(i);
+            if (c == FORMATTING_CODE) {
+                isEscape = true;
+            } else {
+                if (!isEscape) {
+                    plainBuilder.append(c);
+                }
+                isEscape = false;
+            }
+        }
+        return plainBuilder.toString();
+    }
+
+    /**
+     * Utility class.
+     */
+    private MessageNormalizer() {
+    }
+}
@@ -0,0 +1,119 @@
+package nge.lk.mods.simpletabs.core;
+
+import nge.lk.mods.simpletabs.core.filter.ParsedMessage;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Matches a message against a large number of tabs by partitioning the tabs across a small fork-join pool.
+ */
+final class ParallelClassifier {
+
+    /**
+     * The maximum number of worker threads.
+     */
+    private static final int MAX_PARALLELISM = 4;
+
+    /**
+     * The number of tabs from which on matching is done in parallel.
+     */
+    static final int PARALLEL_THRESHOLD = 128;
+
+    /**
+     * The number of worker threads, leaving one processor to the client thread. Below two workers, matching is done
+     * sequentially.
+     */
+    static final int PARALLELISM = Math.min(MAX_PARALLELISM, Runtime.getRuntime().availableProcessors() - 1);
+
+    /**
+     * The number of tabs below which a partition is matched sequentially.
+     */
+    private static final int SEQUENTIAL_CHUNK = 32;
+
+    /**
+     * The pool running the matching tasks. Its worker threads are daemon threads.
+     */
+    private final ForkJoinPool pool = new ForkJoinPool(PARALLELISM);
+
+    /**
+     * Matches a message against all given tabs.
+     *
+     * @param routes       The routes of the tabs.
+     * @param message      The message.
+     * @return For each route, whether its tab accepts the message.
+     */
+    boolean[] classify(final RoutingTable.Route<?>[] routes, final ParsedMessage message) {
+        final boolean[] accepted = new boolean[routes.length];
+        pool.invoke(new MatchTask(routes, message, accepted, 0, routes.length));
+        return accepted;
+    }
+
+    /**
+     * Matches a message against a range of tabs, splitting the range while it is large.
+     */
+    private static final class MatchTask extends RecursiveAction {
+
+        /**
+         * The serialization version.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The routes of the tabs.
+         */
+        private final RoutingTable.Route<?>[] routes;
+
+        /**
+         * The message.
+         */
+        private final ParsedMessage message;
+
+        /**
+         * Receives the results, each task writing only its own range.
+         */
+        private final boolean[] accepted;
+
+        /**
+         * The first tab of the range.
+         */
+        private final int from;
+
+        /**
+         * The end of the range, exclusive.
+         */
+        private final int to;
+
+        /**
+         * Constructor.
+         *
+         * @param routes       The routes of the tabs.
+         * @param message      The message.
+         * @param accepted     Receives the results.
+         * @param from         The first tab of the range.
+         * @param to           The end of the range, exclusive.
+         */
+        private MatchTask(final RoutingTable.Route<?>[] routes, final ParsedMessage message, final boolean[] accepted,
+                          final int from, final int to) {
+            this.routes = routes;
+            this.message = message;
+            this.accepted = accepted;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SEQUENTIAL_CHUNK) {
+                for (int i = from; i < to; i++) {
+                    accepted[i] = routes[i].matches(message);
+                }
+                return;
+            }
+
+            final int middle = (from + to) >>> 1;
+            invokeAll(new MatchTask(routes, message, accepted, from, middle),
+                    new MatchTask(routes, message, accepted, middle, to));
+        }
+    }
+}
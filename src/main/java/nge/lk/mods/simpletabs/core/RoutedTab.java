@@ -0,0 +1,14 @@
+package nge.lk.mods.simpletabs.core;
+
+/**
+ * A tab which receives messages according to its settings.
+ */
+public interface RoutedTab {
+
+    /**
+     * Returns the settings of this tab.
+     *
+     * @return The settings.
+     */
+    TabSettings getSettings();
+}
@@ -0,0 +1,260 @@
+package nge.lk.mods.simpletabs.core;
+
+import nge.lk.mods.simpletabs.core.filter.EqualsNode;
+import nge.lk.mods.simpletabs.core.filter.FilterContext;
+import nge.lk.mods.simpletabs.core.filter.FilterNode;
+import nge.lk.mods.simpletabs.core.filter.MessageField;
+import nge.lk.mods.simpletabs.core.filter.ParsedMessage;
+import nge.lk.mods.simpletabs.core.trace.TraceEvent;
+import nge.lk.mods.simpletabs.core.trace.Tracer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.function.BiPredicate;
+
+/**
+ * An immutable snapshot of the routing configuration, which finds the tabs accepting a message.
+ *
+ * The filter, the whitelist flag and the name of every tab are captured when the table is built, so later edits of the
+ * tab settings do not affect a table which is in use. Tables are published by replacing them as a whole, so any thread
+ * can match against a consistent table without locking.
+ *
+ * Tabs which only accept an exact value of one field, like all tabs for a sender or channel, are dispatched by one hash
+ * lookup per field, so their number does not affect the routing cost. All other tabs are matched one by one.
+ *
+ * @param <T> The type of the tabs.
+ */
+final class RoutingTable<T extends RoutedTab> {
+
+    /**
+     * The dispatched routes in a {@code Field -> (Value -> Accepting routes)} mapping.
+     */
+    private final Map<MessageField, Map<String, List<Route<T>>>> dispatchTables = new EnumMap<>(MessageField.class);
+
+    /**
+     * The routes which are matched one by one, in tab order.
+     */
+    private final Route<?>[] scannedRoutes;
+
+    /**
+     * Constructor.
+     *
+     * @param groups   All tab groups.
+     * @param included Selects the tabs to route by the index of their group and the tab.
+     */
+    RoutingTable(final List<TabGroup<T>> groups, final BiPredicate<Integer, ? super T> included) {
+        final List<Route<T>> scanned = new ArrayList<>();
+        int order = 0;
+        for (int index = 0; index < groups.size(); index++) {
+            final TabGroup<T> group = groups.get(index);
+            for (int position = 0; position < group.size(); position++) {
+                if (included.test(index, group.getTab(position))) {
+                    add(new Route<>(group.getTab(position), group.getName(position), order++), scanned);
+                }
+            }
+        }
+        scannedRoutes = scanned.toArray(new Route<?>[0]);
+    }
+
+    /**
+     * Adds a route to the dispatch tables if it only accepts an exact field value, or to the scanned routes otherwise.
+     *
+     * @param route   The route.
+     * @param scanned The scanned routes.
+     */
+    private void add(final Route<T> route, final List<Route<T>> scanned) {
+        if (route.whitelist && route.filter instanceof EqualsNode) {
+            final EqualsNode key = (EqualsNode) route.filter;
+            dispatchTables.computeIfAbsent(key.getField(), field -> new HashMap<>())
+                    .computeIfAbsent(key.getValue(), value -> new ArrayList<>(1)).add(route);
+        } else {
+            scanned.add(route);
+        }
+    }
+
+    /**
+     * Checks whether the table routes no tabs.
+     *
+     * @return Whether no message is accepted.
+     */
+    boolean isEmpty() {
+        return dispatchTables.isEmpty() && scannedRoutes.length == 0;
+    }
+
+    /**
+     * Checks whether matching should be done in parallel.
+     *
+     * @return Whether there are enough tabs which are matched one by one, and enough processors to share the work.
+     */
+    boolean isParallel() {
+        return ParallelClassifier.PARALLELISM > 1 && scannedRoutes.length >= ParallelClassifier.PARALLEL_THRESHOLD;
+    }
+
+    /**
+     * Finds all tabs accepting the given message. May be called from any thread.
+     *
+     * @param message    The message.
+     * @param classifier The classifier for matching in parallel, or {@code null} to match sequentially.
+     * @return The accepting tabs in tab order.
+     */
+    @SuppressWarnings("unchecked")
+    List<T> classify(final ParsedMessage message, final ParallelClassifier classifier) {
+        final List<Route<T>> dispatched = dispatch(message);
+        final boolean[] accepted = classifier != null && isParallel() ? classifier.classify(scannedRoutes, message)
+                : null;
+
+        // Merge the dispatched and the scanned routes in tab order.
+        final List<T> acceptingTabs = new ArrayList<>();
+        int next = 0;
+        for (int i = 0; i < scannedRoutes.length; i++) {
+            final Route<T> route = (Route<T>) scannedRoutes[i];
+            if (accepted != null ? accepted[i] : route.matches(message)) {
+                while (next < dispatched.size() && dispatched.get(next).order < route.order) {
+                    acceptingTabs.add(dispatched.get(next++).tab);
+                }
+                acceptingTabs.add(route.tab);
+            }
+        }
+        while (next < dispatched.size()) {
+            acceptingTabs.add(dispatched.get(next++).tab);
+        }
+        return acceptingTabs.isEmpty() ? Collections.emptyList() : acceptingTabs;
+    }
+
+    /**
+     * Looks up the dispatched routes accepting the given message.
+     *
+     * @param message The message.
+     * @return The accepting routes in tab order.
+     */
+    private List<Route<T>> dispatch(final ParsedMessage message) {
+        List<Route<T>> accepting = Collections.emptyList();
+        for (final Entry<MessageField, Map<String, List<Route<T>>>> table : dispatchTables.entrySet()) {
+            final String value = message.getField(table.getKey());
+            if (value != null) {
+                final List<Route<T>> dispatched = table.getValue().get(value);
+                if (dispatched != null) {
+                    traceDispatched(dispatched);
+                    if (accepting.isEmpty()) {
+                        accepting = dispatched;
+                    } else {
+                        // Only tabs for several fields of one message need sorting.
+                        accepting = new ArrayList<>(accepting);
+                        accepting.addAll(dispatched);
+                        accepting.sort(Comparator.comparingInt(route -> route.order));
+                    }
+                }
+            }
+        }
+        return accepting;
+    }
+
+    /**
+     * Checks cheaply whether any tab may accept the given message. Dispatched routes are looked up, and the filters of
+     * the other routes are only evaluated as far as that is cheap.
+     *
+     * @param message The message.
+     * @return Whether a tab accepts the message, or a filter could not be evaluated cheaply.
+     */
+    boolean mayAccept(final ParsedMessage message) {
+        for (final Entry<MessageField, Map<String, List<Route<T>>>> table : dispatchTables.entrySet()) {
+            final String value = message.getField(table.getKey());
+            if (value != null && table.getValue().containsKey(value)) {
+                return true;
+            }
+        }
+
+        final FilterContext context = FilterContext.forMessage(message);
+        for (final Route<?> route : scannedRoutes) {
+            final Boolean result = route.filter.evaluateCheaply(context);
+            if (result == null || result == route.whitelist) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Emits a {@link TraceEvent#MATCH} event for each dispatched route, which accepted the message by a lookup.
+     *
+     * @param dispatched The dispatched routes.
+     */
+    private static void traceDispatched(final List<? extends Route<?>> dispatched) {
+        for (final Route<?> route : dispatched) {
+            final Object trace = Tracer.begin(TraceEvent.MATCH);
+            if (trace == null) {
+                return;
+            }
+            Tracer.commit(trace, route.name, true);
+        }
+    }
+
+    /**
+     * A tab together with the routing configuration it had when the table was built.
+     *
+     * @param <T> The type of the tab.
+     */
+    static final class Route<T extends RoutedTab> {
+
+        /**
+         * The tab.
+         */
+        private final T tab;
+
+        /**
+         * The name of the tab.
+         */
+        private final String name;
+
+        /**
+         * The filter of the tab.
+         */
+        private final FilterNode filter;
+
+        /**
+         * Whether the filter selects the accepted or the rejected messages.
+         */
+        private final boolean whitelist;
+
+        /**
+         * The position of the tab among all routed tabs.
+         */
+        private final int order;
+
+        /**
+         * Constructor.
+         *
+         * @param tab   The tab.
+         * @param name  The name of the tab.
+         * @param order The position of the tab among all routed tabs.
+         */
+        private Route(final T tab, final String name, final int order) {
+            this.tab = tab;
+            this.name = name;
+            this.order = order;
+            filter = tab.getSettings().getFilter();
+            whitelist = tab.getSettings().isWhitelist();
+        }
+
+        /**
+         * Matches a message against the filter, emitting a {@link TraceEvent#MATCH} event.
+         *
+         * @param message The message.
+         * @return Whether the tab accepts the message.
+         */
+        boolean matches(final ParsedMessage message) {
+            final Object trace = Tracer.begin(TraceEvent.MATCH);
+            final boolean accepted = filter.evaluate(FilterContext.forMessage(message)) == whitelist;
+            if (trace != null) {
+                Tracer.commit(trace, name, accepted);
+            }
+            return accepted;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package nge.lk.mods.simpletabs.core;
+
+/**
+ * A line which several histories hold at once, such as a message which was accepted by several tabs.
+ *
+ * The content of a shared line counts against the {@link MemoryBudget} once, while any history holds the line, and
+ * each history only counts its reference to the line.
+ */
+public interface SharedLine {
+
+    /**
+     * Registers a history which holds this line.
+     *
+     * @return The estimated size of the line's content in bytes if no other history held the line, otherwise
+     * {@code 0}.
+     */
+    long retain();
+
+    /**
+     * Unregisters a history which held this line.
+     *
+     * @return The estimated size of the line's content in bytes if no other history holds the line anymore, otherwise
+     * {@code 0}.
+     */
+    long release();
+
+    /**
+     * Returns the number of histories which hold this line.
+     *
+     * @return The number of holders.
+     */
+    int getHolders();
+}
@@ -0,0 +1,231 @@
+package nge.lk.mods.simpletabs.core;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A temporary file for compressed history blocks, accessed through memory-mapped segments.
+ *
+ * Blocks never cross a segment boundary, so every block is read from a single mapping. The live bytes of each segment
+ * are counted, and a segment whose blocks were all freed is reused for new blocks. Segments which are mostly freed are
+ * reported by {@link #getSparseSegment}, so their blocks can be moved away.
+ *
+ * The file is opened to be deleted on close, which the operating system does even if the game crashes. Closing unmaps
+ * the segments first, as a mapped file can't be deleted on Windows.
+ */
+final class SpillFile {
+
+    /**
+     * The size of a mapped segment in bytes.
+     */
+    static final int SEGMENT_SIZE = 16 << 20;
+
+    /**
+     * The file, or {@code null} if it was not created yet.
+     */
+    private FileChannel channel;
+
+    /**
+     * The mapped segments, in file order.
+     */
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+
+    /**
+     * The number of bytes of each segment which belong to blocks that were not freed.
+     */
+    private int[] liveBytes = new int[4];
+
+    /**
+     * The segments without live bytes which are not the current segment.
+     */
+    private final BitSet freeSegments = new BitSet();
+
+    /**
+     * The segment blocks are appended to, or {@code -1} if there is none.
+     */
+    private int current = -1;
+
+    /**
+     * The position in the current segment at which the next block is written.
+     */
+    private int currentEnd;
+
+    /**
+     * The number of live bytes of all segments.
+     */
+    private long totalLiveBytes;
+
+    /**
+     * Returns the segment of a block.
+     *
+     * @param position The position of the block.
+     * @return The segment.
+     */
+    static int getSegment(final long position) {
+        return (int) (position / SEGMENT_SIZE);
+    }
+
+    /**
+     * Unmaps a segment right away instead of waiting for the garbage collector, using the internal cleaner of the
+     * runtime if it is accessible.
+     *
+     * @param segment The segment, which must not be accessed anymore.
+     */
+    private static void unmap(final MappedByteBuffer segment) {
+        try {
+            final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            try {
+                // Java 9 and later.
+                unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(theUnsafe.get(null), segment);
+            } catch (final NoSuchMethodException e) {
+                // Java 8.
+                final Method cleanerMethod = segment.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                final Object cleaner = cleanerMethod.invoke(segment);
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (final ReflectiveOperationException | RuntimeException e) {
+            // The segment is unmapped when it is garbage collected.
+        }
+    }
+
+    /**
+     * Appends a block.
+     *
+     * @param data The block. Must not be larger than {@link #SEGMENT_SIZE}.
+     * @return The position of the block.
+     * @throws IOException If the file can't be created or extended.
+     */
+    long append(final byte[] data) throws IOException {
+        if (current < 0 || currentEnd + data.length > SEGMENT_SIZE) {
+            // Start another segment instead of splitting the block.
+            final int previous = current;
+            current = takeSegment();
+            currentEnd = 0;
+            if (previous >= 0 && liveBytes[previous] == 0) {
+                freeSegments.set(previous);
+            }
+        }
+
+        final MappedByteBuffer buffer = segments.get(current);
+        buffer.position(currentEnd);
+        buffer.put(data);
+        final long position = (long) current * SEGMENT_SIZE + currentEnd;
+        currentEnd += data.length;
+        liveBytes[current] += data.length;
+        totalLiveBytes += data.length;
+        return position;
+    }
+
+    /**
+     * Reads a block.
+     *
+     * @param position The position of the block.
+     * @param length   The length of the block.
+     * @return The block.
+     */
+    byte[] read(final long position, final int length) {
+        // Duplicate the buffer, so reading doesn't move the position used for appending.
+        final ByteBuffer buffer = segments.get(getSegment(position)).duplicate();
+        buffer.position((int) (position % SEGMENT_SIZE));
+        final byte[] data = new byte[length];
+        buffer.get(data);
+        return data;
+    }
+
+    /**
+     * Frees a block, so its space can be reused once the rest of its segment is freed as well.
+     *
+     * @param position The position of the block.
+     * @param length   The length of the block.
+     */
+    void free(final long position, final int length) {
+        final int segment = getSegment(position);
+        liveBytes[segment] -= length;
+        totalLiveBytes -= length;
+        if (liveBytes[segment] == 0) {
+            if (segment == current) {
+                currentEnd = 0;
+            } else {
+                freeSegments.set(segment);
+            }
+        }
+    }
+
+    /**
+     * Finds a segment whose blocks should be moved to other segments, so it can be reused. That is the case if less
+     * than half of the used segments is live.
+     *
+     * @return The used segment with the fewest live bytes, other than the current segment, or {@code -1} if the file is
+     * not sparse enough.
+     */
+    int getSparseSegment() {
+        final int usedSegments = segments.size() - freeSegments.cardinality();
+        if (usedSegments < 2 || totalLiveBytes * 2 >= (long) usedSegments * SEGMENT_SIZE) {
+            return -1;
+        }
+
+        int sparsest = -1;
+        for (int segment = 0; segment < segments.size(); segment++) {
+            if (segment != current && !freeSegments.get(segment)
+                    && (sparsest < 0 || liveBytes[segment] < liveBytes[sparsest])) {
+                sparsest = segment;
+            }
+        }
+        return sparsest;
+    }
+
+    /**
+     * Unmaps all segments and deletes the file. All blocks are lost.
+     *
+     * @throws IOException If the file can't be closed.
+     */
+    void close() throws IOException {
+        for (final MappedByteBuffer segment : segments) {
+            unmap(segment);
+        }
+        segments.clear();
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * Takes a free segment, or maps a new one if there is none.
+     *
+     * @return The segment.
+     * @throws IOException If the file can't be created or extended.
+     */
+    private int takeSegment() throws IOException {
+        final int free = freeSegments.nextSetBit(0);
+        if (free >= 0) {
+            freeSegments.clear(free);
+            return free;
+        }
+
+        if (channel == null) {
+            channel = FileChannel.open(Files.createTempFile("simpletabs-", ".spill"), StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+        }
+        final int segment = segments.size();
+        segments.add(channel.map(MapMode.READ_WRITE, (long) segment * SEGMENT_SIZE, SEGMENT_SIZE));
+        if (segment == liveBytes.length) {
+            liveBytes = Arrays.copyOf(liveBytes, segment * 2);
+        }
+        return segment;
+    }
+}
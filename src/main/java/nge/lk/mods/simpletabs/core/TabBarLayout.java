@@ -0,0 +1,240 @@
+package nge.lk.mods.simpletabs.core;
+
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * The geometry of the tab bar: where the labels and buttons are, which of them is under the mouse, and how they are
+ * drawn. The bar is laid out in chat coordinates, independent of the font renderer and the GL state.
+ */
+public class TabBarLayout {
+
+    /**
+     * The number of tabs per page.
+     */
+    public static final int TABS_PER_PAGE = 5;
+
+    /**
+     * The mouse is over no tab.
+     */
+    public static final int NO_TAB = -1;
+
+    /**
+     * The mouse is over the 'Prior page' button.
+     */
+    public static final int LEFT_PAGE = -2;
+
+    /**
+     * The mouse is over the 'Next page' button.
+     */
+    public static final int RIGHT_PAGE = -3;
+
+    /**
+     * The mouse is over the 'Add tab' button.
+     */
+    public static final int ADD_TAB = -4;
+
+    /**
+     * The mouse is over the 'Cycle Group' button.
+     */
+    public static final int CYCLE_GROUP = -5;
+
+    /**
+     * The longest possible tab name.
+     */
+    private static final String MAXIMUM_TAB_NAME = "\u00a7lMMMMMMMM";
+
+    /**
+     * The padding between tab labels.
+     */
+    private static final int PADDING = 3;
+
+    /**
+     * For some reason, the leftmost x coordinate is not 0.
+     */
+    private static final int LEFTMOST_X_COORDINATE = -2;
+
+    /**
+     * The color of the label background.
+     */
+    private static final int COLOR_BG_NORMAL = 0x66FFFFFF;
+
+    /**
+     * The color of the label background when the label is highlighted.
+     */
+    private static final int COLOR_BG_HIGHLIGHT = 0xAAFFFFFF;
+
+    /**
+     * The font color of the labels.
+     */
+    private static final int COLOR_FONT = 0xFF333333;
+
+    /**
+     * The font color of highlighted labels.
+     */
+    private static final int COLOR_FONT_HIGHLIGHT = 0xFF000000;
+
+    /**
+     * The mask applied to the background color of labels with unread messages.
+     */
+    private static final int COLOR_MASK_UNREAD = 0xFFFF3F3F;
+
+    /**
+     * Measures the width of a text.
+     */
+    private final ToIntFunction<String> measure;
+
+    /**
+     * Constructor.
+     *
+     * @param measure Measures the width of a text, preferably cached.
+     */
+    public TabBarLayout(final ToIntFunction<String> measure) {
+        this.measure = measure;
+    }
+
+    /**
+     * Finds the label or button at the given position.
+     *
+     * @param x           The x coordinate, in chat coordinates.
+     * @param y           The y coordinate, in chat coordinates.
+     * @param activeGroup The index of the active tab group.
+     * @return The slot of the tab on the current page, or one of the button constants, or {@link #NO_TAB}.
+     */
+    public int hitTest(final int x, final int y, final int activeGroup) {
+        int tabUnderMouse = NO_TAB;
+        // First: Check the correct Y position. This is the same for all labels.
+        if (y < 0 && y >= -11) {
+            final int tabWidth = measure.applyAsInt(MAXIMUM_TAB_NAME) + PADDING;
+            final int leftWidth = measure.applyAsInt("<") + PADDING;
+            final int rightWidth = measure.applyAsInt(">") + PADDING;
+            final int plusWidth = measure.applyAsInt("+") + PADDING;
+            final int groupWidth = measure.applyAsInt(Integer.toString(activeGroup + 1)) + PADDING;
+            final int finalBegin = LEFTMOST_X_COORDINATE + (leftWidth + 1) + (tabWidth + 1) * TABS_PER_PAGE;
+
+            // Special case <.
+            if (x >= LEFTMOST_X_COORDINATE && x <= LEFTMOST_X_COORDINATE + leftWidth) {
+                tabUnderMouse = LEFT_PAGE;
+            }
+
+            // Special case >.
+            if (x >= finalBegin && x <= finalBegin + rightWidth) {
+                tabUnderMouse = RIGHT_PAGE;
+            }
+
+            // Special case +.
+            if (x >= finalBegin + rightWidth + 1 && x <= finalBegin + rightWidth + plusWidth) {
+                tabUnderMouse = ADD_TAB;
+            }
+
+            // Special case group cycle.
+            if (x >= finalBegin + rightWidth + plusWidth + 2
+                    && x <= finalBegin + rightWidth + plusWidth + groupWidth + 1) {
+                tabUnderMouse = CYCLE_GROUP;
+            }
+
+            final int offsetX = x - (LEFTMOST_X_COORDINATE + (leftWidth + 1));
+            final int section = offsetX / (tabWidth + 1);
+            if (offsetX >= 0 && section < TABS_PER_PAGE) {
+                tabUnderMouse = (offsetX % (tabWidth + 1) == tabWidth) ? NO_TAB : section;
+            }
+        }
+        return tabUnderMouse;
+    }
+
+    /**
+     * Draws the labels of the visible tabs and the buttons.
+     *
+     * @param group         The active tab group.
+     * @param activeGroup   The index of the active tab group.
+     * @param tabOffset     The position of the leftmost visible tab.
+     * @param activeTab     The position of the active tab, or {@link TabGroup#NO_TAB}.
+     * @param tabUnderMouse The result of {@link #hitTest} for the mouse position.
+     * @param unread        Checks whether a tab has unread messages.
+     * @param groupsUnread  Whether another tab group may have unread messages.
+     * @param canvas        Receives the drawing operations.
+     * @param <T>           The type of the tabs.
+     */
+    public <T> void draw(final TabGroup<T> group, final int activeGroup, final int tabOffset, final int activeTab,
+                         final int tabUnderMouse, final Predicate<? super T> unread, final boolean groupsUnread,
+                         final Canvas canvas) {
+        final int tabWidth = measure.applyAsInt(MAXIMUM_TAB_NAME) + PADDING;
+        final int leftWidth = measure.applyAsInt("<") + PADDING;
+        final int rightWidth = measure.applyAsInt(">") + PADDING;
+        final int plusWidth = measure.applyAsInt("+") + PADDING;
+        final String groupLabel = Integer.toString(activeGroup + 1);
+        final int groupWidth = measure.applyAsInt(groupLabel) + PADDING;
+
+        // The position after the tabs -- the ones represent the margins.
+        int finalBegin = LEFTMOST_X_COORDINATE + (leftWidth + 1) + (tabWidth + 1) * TABS_PER_PAGE;
+        int posX = LEFTMOST_X_COORDINATE;
+
+        // Navigate left button.
+        canvas.drawRect(posX, 0, posX + leftWidth, 10,
+                tabUnderMouse == LEFT_PAGE ? COLOR_BG_HIGHLIGHT : COLOR_BG_NORMAL);
+        canvas.drawString("<", posX + 2, 1, COLOR_FONT);
+        posX += leftWidth + 1;
+
+        // Only the visible tabs are looked at, limited to one page.
+        final int lastTab = Math.min(group.size(), tabOffset + TABS_PER_PAGE);
+        for (int position = tabOffset; position < lastTab; position++) {
+            final int index = position - tabOffset;
+
+            // Change the color of unread tab labels.
+            final int colorMask = unread.test(group.getTab(position)) ? COLOR_MASK_UNREAD : 0xFFFFFFFF;
+
+            final boolean isTabActive = position == activeTab;
+
+            canvas.drawRect(posX, 0, posX + tabWidth, 10,
+                    (index == tabUnderMouse ? COLOR_BG_HIGHLIGHT : COLOR_BG_NORMAL) & colorMask);
+            canvas.drawString((isTabActive ? "\u00a7l" : "") + group.getName(position), posX + 2, 1,
+                    isTabActive ? COLOR_FONT_HIGHLIGHT : COLOR_FONT);
+            posX += tabWidth + 1;
+        }
+
+        // Navigate right button.
+        canvas.drawRect(finalBegin, 0, finalBegin + rightWidth, 10,
+                tabUnderMouse == RIGHT_PAGE ? COLOR_BG_HIGHLIGHT : COLOR_BG_NORMAL);
+        canvas.drawString(">", finalBegin + 2, 1, COLOR_FONT);
+        finalBegin += rightWidth + 1;
+
+        // Add tab button.
+        canvas.drawRect(finalBegin, 0, finalBegin + plusWidth, 10,
+                tabUnderMouse == ADD_TAB ? COLOR_BG_HIGHLIGHT : COLOR_BG_NORMAL);
+        canvas.drawString("+", finalBegin + 2, 1, COLOR_FONT);
+        finalBegin += plusWidth + 1;
+
+        // Cycle group button, colored like unread tabs if another group may have unread messages.
+        canvas.drawRect(finalBegin, 0, finalBegin + groupWidth, 10,
+                (tabUnderMouse == CYCLE_GROUP ? COLOR_BG_HIGHLIGHT : COLOR_BG_NORMAL)
+                        & (groupsUnread ? COLOR_MASK_UNREAD : 0xFFFFFFFF));
+        canvas.drawString(groupLabel, finalBegin + 2, 1, COLOR_FONT);
+    }
+
+    /**
+     * Receives the drawing operations of the tab bar.
+     */
+    public interface Canvas {
+
+        /**
+         * Fills a rectangle.
+         *
+         * @param left   The left edge.
+         * @param top    The top edge.
+         * @param right  The right edge.
+         * @param bottom The bottom edge.
+         * @param color  The ARGB color.
+         */
+        void drawRect(int left, int top, int right, int bottom, int color);
+
+        /**
+         * Draws a text.
+         *
+         * @param text  The text, possibly with formatting codes.
+         * @param x     The left edge.
+         * @param y     The top edge.
+         * @param color The ARGB color.
+         */
+        void drawString(String text, int x, int y, int color);
+    }
+}
@@ -0,0 +1,151 @@
+package nge.lk.mods.simpletabs.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * An ordered group of named tabs with constant time access by position and by name.
+ *
+ * @param <T> The type of the tabs.
+ */
+public class TabGroup<T> {
+
+    /**
+     * The position returned for tabs which are not in the group.
+     */
+    public static final int NO_TAB = -1;
+
+    /**
+     * The tab names, in tab order.
+     */
+    private final List<String> names = new ArrayList<>();
+
+    /**
+     * The tabs, in tab order.
+     */
+    private final List<T> tabs = new ArrayList<>();
+
+    /**
+     * The position of each tab in a {@code Name -> Position} mapping.
+     */
+    private final Map<String, Integer> positions = new HashMap<>();
+
+    /**
+     * Returns the number of tabs in this group.
+     *
+     * @return The number of tabs.
+     */
+    public int size() {
+        return tabs.size();
+    }
+
+    /**
+     * Returns whether this group has no tabs.
+     *
+     * @return Whether this group is empty.
+     */
+    public boolean isEmpty() {
+        return tabs.isEmpty();
+    }
+
+    /**
+     * Returns the name of the tab at the given position.
+     *
+     * @param position The position.
+     * @return The name.
+     */
+    public String getName(final int position) {
+        return names.get(position);
+    }
+
+    /**
+     * Returns the tab at the given position.
+     *
+     * @param position The position.
+     * @return The tab.
+     */
+    public T getTab(final int position) {
+        return tabs.get(position);
+    }
+
+    /**
+     * Returns the position of the tab with the given name.
+     *
+     * @param name The name.
+     * @return The position, or {@link #NO_TAB} if there is no such tab.
+     */
+    public int indexOf(final String name) {
+        final Integer position = positions.get(name);
+        return position == null ? NO_TAB : position;
+    }
+
+    /**
+     * Returns whether a tab with the given name exists in this group.
+     *
+     * @param name The name.
+     * @return Whether the tab exists.
+     */
+    public boolean contains(final String name) {
+        return positions.containsKey(name);
+    }
+
+    /**
+     * Returns the tabs of this group, in tab order.
+     *
+     * @return The tabs.
+     */
+    public List<T> getTabs() {
+        return Collections.unmodifiableList(tabs);
+    }
+
+    /**
+     * Creates a group with the same names, whose tabs are converted from the tabs of this group.
+     *
+     * @param converter Converts the tabs.
+     * @param <R>       The type of the converted tabs.
+     * @return The converted group.
+     */
+    <R> TabGroup<R> map(final Function<? super T, ? extends R> converter) {
+        final TabGroup<R> group = new TabGroup<>();
+        for (int i = 0; i < tabs.size(); i++) {
+            group.put(names.get(i), converter.apply(tabs.get(i)));
+        }
+        return group;
+    }
+
+    /**
+     * Adds a tab after the last tab, replacing any tab with the same name in place.
+     *
+     * @param name The name.
+     * @param tab  The tab.
+     */
+    void put(final String name, final T tab) {
+        final Integer existing = positions.get(name);
+        if (existing != null) {
+            tabs.set(existing, tab);
+            return;
+        }
+        positions.put(name, tabs.size());
+        names.add(name);
+        tabs.add(tab);
+    }
+
+    /**
+     * Removes the tab at the given position.
+     *
+     * @param position The position.
+     */
+    void remove(final int position) {
+        positions.remove(names.remove(position));
+        tabs.remove(position);
+
+        // The tabs behind the removed one moved forward by one.
+        for (int i = position; i < names.size(); i++) {
+            positions.put(names.get(i), i);
+        }
+    }
+}
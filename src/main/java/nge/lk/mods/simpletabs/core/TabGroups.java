@@ -0,0 +1,461 @@
+package nge.lk.mods.simpletabs.core;
+
+import lombok.Getter;
+import nge.lk.mods.simpletabs.core.filter.FilterMode;
+import nge.lk.mods.simpletabs.core.filter.ParsedMessage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * The tab groups, the selection of the active group and tab, and the routing of messages to the tabs.
+ *
+ * Messages are routed right away to the tabs of the active group and to the tabs of other groups which play
+ * notification sounds. Matching the quiet tabs of the other groups can be deferred until their group is activated, see
+ * {@link #hasDeferredTabs} and {@link #classifyDeferred}.
+ *
+ * @param <T> The type of the tabs.
+ */
+public class TabGroups<T extends RoutedTab> {
+
+    /**
+     * The name of the default tab.
+     */
+    public static final String DEFAULT_TAB_NAME = "General";
+
+    /**
+     * The number of messages whose classification is cached.
+     */
+    private static final int CLASSIFICATION_CACHE_SIZE = 1024;
+
+    /**
+     * The existing tabs, one group for each tab group.
+     */
+    private final List<TabGroup<T>> tabs = new ArrayList<>();
+
+    /**
+     * Creates tabs from their settings.
+     */
+    private final Function<TabSettings, T> tabFactory;
+
+    /**
+     * The cached classifications of recent messages.
+     */
+    private final ClassificationCache<T> classificationCache = new ClassificationCache<>(CLASSIFICATION_CACHE_SIZE);
+
+    /**
+     * Matches messages in parallel if there are many tabs. Created when a routing table first needs it.
+     */
+    private volatile ParallelClassifier parallelClassifier;
+
+    /**
+     * The routing tables, replaced as a whole after every edit and whenever another group is activated.
+     */
+    private volatile Routing<T> routing;
+
+    /**
+     * The active tab group.
+     */
+    @Getter private int activeGroup;
+
+    /**
+     * The position of the currently active tab in the active group.
+     */
+    private int activeTab;
+
+    /**
+     * The position of the active tab of each group when the group was last left, by the index of the group.
+     */
+    private final List<Integer> groupActiveTabs = new ArrayList<>();
+
+    /**
+     * The offset of the leftmost tab.
+     */
+    @Getter private int tabOffset;
+
+    /**
+     * Constructor.
+     *
+     * @param loadedTabs The tab groups which were loaded from the save file.
+     * @param tabFactory Creates tabs from their settings.
+     */
+    public TabGroups(final Collection<TabGroup<T>> loadedTabs, final Function<TabSettings, T> tabFactory) {
+        this.tabFactory = tabFactory;
+        tabs.addAll(loadedTabs);
+
+        activeGroup = 0;
+        if (tabs.isEmpty()) {
+            // Only add the default tab if there is no tab group whatsoever.
+            tabs.add(new TabGroup<>());
+            addDefaultTab();
+        }
+
+        // At this point, all tab groups must not be empty.
+        activeTab = 0;
+        publishRouting();
+    }
+
+    /**
+     * Passes the tabs accepting the given message which are routed right away to the receiver: the tabs of the active
+     * group and the notifying tabs of the other groups.
+     *
+     * @param message  The message.
+     * @param receiver The receiver of the accepting tabs.
+     */
+    public void route(final ParsedMessage message, final Consumer<? super T> receiver) {
+        List<T> acceptingTabs = classificationCache.get(message);
+        if (acceptingTabs == null) {
+            acceptingTabs = routing.immediate.classify(message, parallelClassifier);
+            classificationCache.put(message, acceptingTabs);
+        }
+
+        for (int i = 0; i < acceptingTabs.size(); i++) {
+            receiver.accept(acceptingTabs.get(i));
+        }
+    }
+
+    /**
+     * Finds all tabs accepting the given message, bypassing the classification cache. May be called from any thread;
+     * the message is matched against the routing configuration which was current when this method was called.
+     *
+     * @param message The message.
+     * @return The accepting tabs.
+     */
+    public List<T> classify(final ParsedMessage message) {
+        final Routing<T> current = routing;
+        final List<T> acceptingTabs = new ArrayList<>(current.immediate.classify(message, parallelClassifier));
+        for (int group = 0; group < current.deferred.size(); group++) {
+            if (group != current.activeGroup) {
+                acceptingTabs.addAll(current.deferred.get(group).classify(message, parallelClassifier));
+            }
+        }
+        return acceptingTabs;
+    }
+
+    /**
+     * Checks whether matching messages against some tabs of a group is deferred, because the group is not active and
+     * has tabs which do not notify.
+     *
+     * @param group The index of the group.
+     * @return Whether messages have to be kept for {@link #classifyDeferred}.
+     */
+    public boolean hasDeferredTabs(final int group) {
+        final Routing<T> current = routing;
+        return group != current.activeGroup && !current.deferred.get(group).isEmpty();
+    }
+
+    /**
+     * Checks cheaply whether a tab of a group whose matching is deferred may accept the given message, so that messages
+     * which are certainly not accepted don't have to be kept.
+     *
+     * @param group   The index of the group.
+     * @param message The message.
+     * @return Whether the message has to be kept for {@link #classifyDeferred}.
+     */
+    public boolean mayAcceptDeferred(final int group, final ParsedMessage message) {
+        return routing.deferred.get(group).mayAccept(message);
+    }
+
+    /**
+     * Checks whether a tab belongs to the active group.
+     *
+     * @param tab The tab.
+     * @return Whether the tab is in the active group.
+     */
+    public boolean isInActiveGroup(final T tab) {
+        return routing.activeTabs.contains(tab);
+    }
+
+    /**
+     * Finds the tabs of a group accepting the given message which are not routed right away in inactive groups, i.e.
+     * the tabs which do not notify. Used to catch up on the messages received while the group was inactive.
+     *
+     * @param group   The index of the group.
+     * @param message The message.
+     * @return The accepting tabs.
+     */
+    public List<T> classifyDeferred(final int group, final ParsedMessage message) {
+        return routing.deferred.get(group).classify(message, parallelClassifier);
+    }
+
+    /**
+     * Creates a new tab in the active group.
+     *
+     * @param title    The title of the tab.
+     * @param settings The settings of the tab.
+     * @return The created tab.
+     */
+    public T createTab(final String title, final TabSettings settings) {
+        final T tab = tabFactory.apply(settings);
+        tabs.get(activeGroup).put(title, tab);
+        publishRouting();
+        return tab;
+    }
+
+    /**
+     * Updates the filter pattern of a tab.
+     *
+     * @param tab       The tab.
+     * @param pattern   The new pattern.
+     * @param mode      How the pattern is interpreted.
+     * @param whitelist Whether the tab implements a whitelist or a blacklist.
+     * @param notify    Whether this tab will play notification sounds.
+     */
+    public void updatePattern(final T tab, final String pattern, final FilterMode mode, final boolean whitelist,
+                              final boolean notify) {
+        tab.getSettings().updatePattern(pattern, mode, whitelist, notify);
+        publishRouting();
+    }
+
+    /**
+     * Returns whether the given tab exists.
+     *
+     * @param tab The tab's name.
+     * @return Whether it exists.
+     */
+    public boolean doesTabExistInActiveGroup(final String tab) {
+        return tabs.get(activeGroup).contains(tab);
+    }
+
+    /**
+     * Shows the previous tab page.
+     *
+     * @param tabsPerPage The number of tabs per page.
+     */
+    public void previousTabPage(final int tabsPerPage) {
+        tabOffset = Math.max(0, tabOffset - tabsPerPage);
+    }
+
+    /**
+     * Shows the next tab page.
+     *
+     * @param tabsPerPage The number of tabs per page.
+     */
+    public void nextTabPage(final int tabsPerPage) {
+        final int tabAmount = tabs.get(activeGroup).size();
+        if (tabOffset + tabsPerPage < tabAmount) {
+            tabOffset += tabsPerPage;
+        }
+    }
+
+    /**
+     * Cycles the current tab group.
+     */
+    public void cycleTabGroup() {
+        while (groupActiveTabs.size() < tabs.size()) {
+            groupActiveTabs.add(0);
+        }
+        groupActiveTabs.set(activeGroup, activeTab);
+        advanceTabGroup();
+        publishRouting();
+
+        // Restore the tab which was active when the group was left. New groups start at their default tab.
+        activeTab = activeGroup < groupActiveTabs.size() ? groupActiveTabs.get(activeGroup) : 0;
+    }
+
+    /**
+     * Checks whether the tab at the given position of the active group is the active tab.
+     *
+     * @param position The position.
+     * @return Whether the tab is the currently active tab.
+     */
+    public boolean isTabActive(final int position) {
+        return position == activeTab;
+    }
+
+    /**
+     * Returns the position of the active tab in the active group.
+     *
+     * @return The position, or {@link TabGroup#NO_TAB} if no tab is active.
+     */
+    public int getActiveTabPosition() {
+        return activeTab;
+    }
+
+    /**
+     * Makes the tab at the given position of the active group active.
+     *
+     * @param position The position.
+     */
+    public void makeTabActive(final int position) {
+        if (position >= 0 && position < tabs.get(activeGroup).size()) {
+            activeTab = position;
+        }
+        // Invariant: The current tab is valid, so no change is needed even if the position doesn't exist.
+    }
+
+    /**
+     * Deletes the tab at the given position of the active group.
+     *
+     * @param position The position.
+     */
+    public void deleteTab(final int position) {
+        final TabGroup<T> group = tabs.get(activeGroup);
+        if (position >= 0 && position < group.size()) {
+            group.remove(position);
+            publishRouting();
+            if (position == activeTab) {
+                activeTab = TabGroup.NO_TAB;
+            } else if (position < activeTab) {
+                // The active tab moved forward by one.
+                activeTab--;
+            }
+        }
+    }
+
+    /**
+     * Resets the selected tab to the first tab of the active group.
+     */
+    public void resetSelectedTab() {
+        activeTab = tabs.get(activeGroup).isEmpty() ? TabGroup.NO_TAB : 0;
+        tabOffset = 0;
+    }
+
+    /**
+     * Get the tabs from the currently active tab group.
+     *
+     * @return The tabs.
+     */
+    public TabGroup<T> getActiveTabGroup() {
+        return tabs.get(activeGroup);
+    }
+
+    /**
+     * Returns the currently active tab.
+     *
+     * @return The currently active tab, or {@code null} if there is none.
+     */
+    public T getActiveTab() {
+        return activeTab == TabGroup.NO_TAB ? null : tabs.get(activeGroup).getTab(activeTab);
+    }
+
+    /**
+     * Returns all tab groups, for saving.
+     *
+     * @return The tab groups.
+     */
+    public List<TabGroup<T>> getGroups() {
+        return Collections.unmodifiableList(tabs);
+    }
+
+    /**
+     * Returns a collection of all existing tabs.
+     *
+     * @return All existing tabs.
+     */
+    public Collection<T> getAllTabs() {
+        final Collection<T> all = new ArrayList<>();
+        for (final TabGroup<T> group : tabs) {
+            all.addAll(group.getTabs());
+        }
+        return all;
+    }
+
+    /**
+     * Builds the routing tables from the current tabs and the active group and publishes them, dropping all routing
+     * state derived from the previous tables.
+     */
+    private void publishRouting() {
+        final int active = activeGroup;
+        final RoutingTable<T> immediate = new RoutingTable<>(tabs,
+                (group, tab) -> group == active || tab.getSettings().isNotify());
+        boolean parallel = immediate.isParallel();
+
+        final List<RoutingTable<T>> deferred = new ArrayList<>(tabs.size());
+        for (int index = 0; index < tabs.size(); index++) {
+            final RoutingTable<T> table = new RoutingTable<>(tabs.subList(index, index + 1),
+                    (group, tab) -> !tab.getSettings().isNotify());
+            parallel |= table.isParallel();
+            deferred.add(table);
+        }
+
+        if (parallel && parallelClassifier == null) {
+            parallelClassifier = new ParallelClassifier();
+        }
+        final Set<T> activeTabs = Collections.newSetFromMap(new IdentityHashMap<>());
+        activeTabs.addAll(tabs.get(active).getTabs());
+        routing = new Routing<>(active, activeTabs, immediate, deferred);
+        classificationCache.invalidate();
+    }
+
+    /**
+     * Advances to the next tab group, wrapping around or creating a new group at the end.
+     */
+    private void advanceTabGroup() {
+        if (activeGroup + 1 < tabs.size()) {
+            activeGroup++;
+        } else {
+            assert activeGroup + 1 == tabs.size() : "invalid current group";
+            // Either the first group is selected, or a new group is created.
+            // A new group is only created if the current group is changed in any way.
+            final TabGroup<T> group = tabs.get(activeGroup);
+            if (group.size() == 1) {
+                if (group.getName(0).equals(DEFAULT_TAB_NAME) && group.getTab(0).getSettings().isDefault()) {
+                    activeGroup = 0;
+                    return;
+                }
+            }
+            activeGroup++;
+            tabs.add(new TabGroup<>());
+            addDefaultTab();
+        }
+    }
+
+    /**
+     * Adds a default tab to the active group.
+     */
+    private void addDefaultTab() {
+        tabs.get(activeGroup).put(DEFAULT_TAB_NAME, tabFactory.apply(TabSettings.createDefault()));
+        publishRouting();
+    }
+
+    /**
+     * The routing tables for one active group.
+     *
+     * @param <T> The type of the tabs.
+     */
+    private static final class Routing<T extends RoutedTab> {
+
+        /**
+         * The index of the active group when the tables were built.
+         */
+        private final int activeGroup;
+
+        /**
+         * The tabs of the active group.
+         */
+        private final Set<T> activeTabs;
+
+        /**
+         * Routes the tabs of the active group and the notifying tabs of the other groups.
+         */
+        private final RoutingTable<T> immediate;
+
+        /**
+         * Routes the tabs of each group which do not notify, by the index of the group.
+         */
+        private final List<RoutingTable<T>> deferred;
+
+        /**
+         * Constructor.
+         *
+         * @param activeGroup The index of the active group.
+         * @param activeTabs  The tabs of the active group.
+         * @param immediate   Routes the tabs which are routed right away.
+         * @param deferred    Routes the tabs of each group which do not notify.
+         */
+        private Routing(final int activeGroup, final Set<T> activeTabs, final RoutingTable<T> immediate,
+                        final List<RoutingTable<T>> deferred) {
+            this.activeGroup = activeGroup;
+            this.activeTabs = activeTabs;
+            this.immediate = immediate;
+            this.deferred = deferred;
+        }
+    }
+}
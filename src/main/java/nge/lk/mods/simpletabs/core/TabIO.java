@@ -1,34 +1,48 @@
-package nge.lk.mods.simpletabs.tabs;
+package nge.lk.mods.simpletabs.core;
 
 import lombok.RequiredArgsConstructor;
-import net.minecraft.client.Minecraft;
 import nge.lk.mods.commonlib.util.DebugUtil;
 import nge.lk.mods.commonlib.util.FileUtil;
+import nge.lk.mods.simpletabs.core.filter.FilterMode;
+import nge.lk.mods.simpletabs.core.trace.TraceEvent;
+import nge.lk.mods.simpletabs.core.trace.Tracer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
+import java.util.function.Function;
 
 /**
  * Handles IO of tabs.
+ *
+ * @param <T> The type of the tabs.
  */
 @RequiredArgsConstructor
-public class TabIO {
+public class TabIO<T extends RoutedTab> {
+
+    /**
+     * The logger.
+     */
+    private static final Logger LOGGER = LogManager.getLogger();
 
     /**
      * The file where the tab configurations are stored in.
      */
     private final File saveFile;
 
+    /**
+     * Creates tabs from their loaded settings.
+     */
+    private final Function<TabSettings, T> tabFactory;
+
     /**
      * Returns an iterator iterating over export strings of tabs.
      *
@@ -36,12 +50,13 @@ public class TabIO {
      *
      * @return An iterator over all export strings.
      */
-    private static Iterator<String> getExportIterator(final Iterable<Map<String, ChatTab>> tabs) {
+    private static <T extends RoutedTab> Iterator<String> getExportIterator(final Iterable<TabGroup<T>> tabs) {
         final Collection<String> mapped = new LinkedList<>();
         int i = 0;
-        for (final Map<String, ChatTab> tabMap : tabs) {
-            for (final Entry<String, ChatTab> tab : tabMap.entrySet()) {
-                mapped.add(i + "§" + tab.getKey() + "§" + tab.getValue().getExport());
+        for (final TabGroup<T> group : tabs) {
+            for (int position = 0; position < group.size(); position++) {
+                mapped.add(i + "§" + group.getName(position) + "§"
+                        + group.getTab(position).getSettings().getExport());
             }
             i++;
         }
@@ -51,24 +66,32 @@ public class TabIO {
     /**
      * Saves the tab configurations to the save file.
      */
-    public void saveState(final Iterable<Map<String, ChatTab>> tabs) {
+    public void saveState(final Iterable<TabGroup<T>> tabs) {
+        final Object trace = Tracer.begin(TraceEvent.SAVE);
         try {
-            FileUtil.writeLineStorage(5, saveFile, getExportIterator(tabs));
+            FileUtil.writeLineStorage(7, saveFile, getExportIterator(tabs));
         } catch (final IOException e) {
             DebugUtil.recoverableError(e);
         }
+        if (trace != null) {
+            Tracer.commit(trace, saveFile.getPath());
+        }
     }
 
     /**
      * Loads the tab configurations from the save file.
      */
-    public List<Map<String, ChatTab>> loadState() {
-        final List<Map<String, ChatTab>> tabResults = new ArrayList<>();
+    public List<TabGroup<T>> loadState() {
+        final Object trace = Tracer.begin(TraceEvent.LOAD);
+        final List<TabGroup<T>> tabResults = new ArrayList<>();
         try {
-            FileUtil.readLineStorage(saveFile, new TabBuilder(tabResults), new TabVersionConverter());
+            FileUtil.readLineStorage(saveFile, new TabBuilder<>(tabResults, tabFactory), new TabVersionConverter());
         } catch (final IOException e) {
             DebugUtil.recoverableError(e);
         }
+        if (trace != null) {
+            Tracer.commit(trace, saveFile.getPath(), tabResults.size());
+        }
         return tabResults;
     }
 
@@ -104,6 +127,19 @@ public class TabIO {
             if (newVersion == 4) { // Converter: v4 -> v5
                 // Change: Add history amount.
                 newLine += "§" + (1.0f / 3.0f);
+                newVersion++;
+            }
+
+            if (newVersion == 5) { // Converter: v5 -> v6
+                // Change: Replaced the literal flag by the filter mode, the flag is kept for older versions.
+                final boolean literal = Boolean.parseBoolean(newLine.split("§", 99)[3]);
+                newLine += "§" + (literal ? FilterMode.KEYWORD : FilterMode.REGEX);
+                newVersion++;
+            }
+
+            if (newVersion == 6) { // Converter: v6 -> v7
+                // Change: Added the retention time, keeping lines forever.
+                newLine += "§" + TabSettings.RETENTION_FOREVER;
                 // newVersion++; // Only need this when converting between more versions.
             }
 
@@ -113,11 +149,19 @@ public class TabIO {
 
     /**
      * Builds tabs from line data.
+     *
+     * @param <T> The type of the tabs.
      */
     @RequiredArgsConstructor
-    private static class TabBuilder implements BiConsumer<String, Integer> {
+    private static class TabBuilder<T> implements BiConsumer<String, Integer> {
+
+        private final List<TabGroup<T>> results;
+
+        /**
+         * Creates tabs from their loaded settings.
+         */
+        private final Function<TabSettings, T> tabFactory;
 
-        private final List<Map<String, ChatTab>> results;
         /**
          * The current group.
          */
@@ -130,20 +174,29 @@ public class TabIO {
 
             // Advance the group, if needed.
             if (!split[0].equals(currentGroup)) {
-                results.add(new LinkedHashMap<>());
+                results.add(new TabGroup<>());
                 currentGroup = split[0];
             }
 
             // Create the tab.
             final String tabName = split[1];
             final String pattern = split[2];
-            final boolean literal = Boolean.parseBoolean(split[3]);
             final String prefix = split[4];
             final boolean whitelist = Boolean.parseBoolean(split[5]);
             final boolean notify = Boolean.parseBoolean(split[6]);
             final float history = Float.parseFloat(split[7]);
-            results.get(results.size() - 1).put(tabName,
-                    new ChatTab(Minecraft.getMinecraft(), pattern, literal, whitelist, notify, prefix, history));
+            final FilterMode mode = FilterMode.valueOf(split[8]);
+            final int retention = Integer.parseInt(split[9]);
+            TabSettings settings;
+            try {
+                settings = new TabSettings(pattern, mode, whitelist, notify, prefix, history, retention);
+            } catch (final IllegalArgumentException e) {
+                // Only possible for hand-edited save files, as the editor validates all patterns.
+                LOGGER.warn("Invalid pattern of tab '{}' in line {}, using an empty filter: {}", tabName, lineNo,
+                        e.getMessage());
+                settings = new TabSettings("", FilterMode.KEYWORD, whitelist, notify, prefix, history, retention);
+            }
+            results.get(results.size() - 1).put(tabName, tabFactory.apply(settings));
         }
     }
 }
@@ -0,0 +1,233 @@
+package nge.lk.mods.simpletabs.core;
+
+import lombok.Getter;
+import nge.lk.mods.commonlib.util.DebugUtil;
+import nge.lk.mods.simpletabs.core.filter.FilterNode;
+import nge.lk.mods.simpletabs.core.filter.FilterPlan;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * The tab configurations of the servers, each stored in a profile keyed by the server address.
+ *
+ * The default profile is used in singleplayer and is the template for servers without a profile of their own. The
+ * settings of a server profile are loaded and their filters compiled in the background, starting when the server is
+ * joined. The tabs are only created from the settings on the client thread, when the profile is activated. Profiles
+ * are only looked up on the client thread.
+ *
+ * @param <T> The type of the tabs.
+ */
+public class TabProfiles<T extends RoutedTab> {
+
+    /**
+     * The extension of profile files.
+     */
+    private static final String PROFILE_EXTENSION = ".dat";
+
+    /**
+     * The port which is omitted from profile keys.
+     */
+    private static final String DEFAULT_PORT = ":25565";
+
+    /**
+     * The settings of default profiles which are loaded ahead of time, by their file, until the profiles take them
+     * over. Holding them keeps their interned filters alive.
+     */
+    private static final Map<File, CompletableFuture<List<TabGroup<RoutedTab>>>> PRELOADED = new ConcurrentHashMap<>();
+
+    /**
+     * The file of the default profile.
+     */
+    private final File defaultFile;
+
+    /**
+     * The directory containing the files of the server profiles.
+     */
+    private final File profileDirectory;
+
+    /**
+     * Creates tabs from their loaded settings.
+     */
+    private final Function<TabSettings, T> tabFactory;
+
+    /**
+     * The default profile.
+     */
+    @Getter private final Profile<T> defaultProfile;
+
+    /**
+     * The server profiles in a {@code Key -> Profile} mapping.
+     */
+    private final Map<String, Profile<T>> profiles = new HashMap<>();
+
+    /**
+     * Returns the profile key of a server address, which is also the name of its profile file.
+     *
+     * @param address The server address.
+     * @return The key.
+     */
+    public static String getProfileKey(final String address) {
+        String key = address.trim().toLowerCase(Locale.ROOT);
+        if (key.endsWith(DEFAULT_PORT)) {
+            key = key.substring(0, key.length() - DEFAULT_PORT.length());
+        }
+        return key.replaceAll("[^a-z0-9.\\-]", "_");
+    }
+
+    /**
+     * Starts loading the settings of a default profile and compiling their filters in the background, before the
+     * profiles are created.
+     *
+     * @param defaultFile The file of the default profile.
+     */
+    public static void preloadDefaultProfile(final File defaultFile) {
+        PRELOADED.put(defaultFile, CompletableFuture.supplyAsync(() -> loadAndPrecompile(defaultFile)));
+    }
+
+    /**
+     * Constructor. Loads the default profile, unless it was {@link #preloadDefaultProfile preloaded}.
+     *
+     * @param defaultFile      The file of the default profile.
+     * @param profileDirectory The directory containing the files of the server profiles.
+     * @param tabFactory       Creates tabs from their loaded settings.
+     */
+    public TabProfiles(final File defaultFile, final File profileDirectory, final Function<TabSettings, T> tabFactory) {
+        this.defaultFile = defaultFile;
+        this.profileDirectory = profileDirectory;
+        this.tabFactory = tabFactory;
+        if (!profileDirectory.isDirectory() && !profileDirectory.mkdirs()) {
+            DebugUtil.recoverableError(new IOException("could not create " + profileDirectory));
+        }
+
+        CompletableFuture<List<TabGroup<RoutedTab>>> settings = PRELOADED.remove(defaultFile);
+        if (settings == null) {
+            settings = CompletableFuture.completedFuture(loadSettings(defaultFile));
+        }
+        defaultProfile = new Profile<>(new TabIO<>(defaultFile, tabFactory), settings, tabFactory);
+    }
+
+    /**
+     * Loads the settings of the tabs in a profile file, without creating the tabs.
+     *
+     * @param file The profile file.
+     * @return The tab groups, whose tabs only hold the settings.
+     */
+    private static List<TabGroup<RoutedTab>> loadSettings(final File file) {
+        return new TabIO<RoutedTab>(file, settings -> () -> settings).loadState();
+    }
+
+    /**
+     * Loads the settings of the tabs in a profile file and compiles their filters, without creating the tabs.
+     *
+     * @param file The profile file.
+     * @return The tab groups, whose tabs only hold the settings.
+     */
+    private static List<TabGroup<RoutedTab>> loadAndPrecompile(final File file) {
+        final List<TabGroup<RoutedTab>> groups = loadSettings(file);
+        final List<FilterNode> filters = new ArrayList<>();
+        for (final TabGroup<RoutedTab> group : groups) {
+            for (final RoutedTab tab : group.getTabs()) {
+                filters.add(tab.getSettings().getFilter());
+            }
+        }
+        FilterPlan.precompileNow(filters);
+        return groups;
+    }
+
+    /**
+     * Returns the profile of a server, starting to load it in the background if it was not loaded before. A server
+     * without a saved profile starts with the tabs of the default profile.
+     *
+     * @param address The server address, or {@code null} for the default profile.
+     * @return The profile.
+     */
+    public Profile<T> getServerProfile(final String address) {
+        if (address == null) {
+            return defaultProfile;
+        }
+        return getProfile(getProfileKey(address));
+    }
+
+    /**
+     * Returns a server profile, starting to load it if it was not loaded before.
+     *
+     * @param key The profile key.
+     * @return The profile.
+     */
+    private Profile<T> getProfile(final String key) {
+        return profiles.computeIfAbsent(key, k -> {
+            final File file = new File(profileDirectory, k + PROFILE_EXTENSION);
+            final File templateFile = file.exists() ? file : defaultFile;
+            return new Profile<>(new TabIO<>(file, tabFactory),
+                    CompletableFuture.supplyAsync(() -> loadAndPrecompile(templateFile)), tabFactory);
+        });
+    }
+
+    /**
+     * The tab configuration of a server.
+     *
+     * @param <T> The type of the tabs.
+     */
+    public static final class Profile<T extends RoutedTab> {
+
+        /**
+         * The IO manager, saving to the file of the profile.
+         */
+        @Getter private final TabIO<T> tabIO;
+
+        /**
+         * The settings of the tab groups, once they are loaded.
+         */
+        private final CompletableFuture<List<TabGroup<RoutedTab>>> settings;
+
+        /**
+         * Creates tabs from their loaded settings.
+         */
+        private final Function<TabSettings, T> tabFactory;
+
+        /**
+         * The tab groups, or {@code null} if the tabs were not created yet.
+         */
+        private TabGroups<T> tabs;
+
+        /**
+         * Constructor.
+         *
+         * @param tabIO      The IO manager.
+         * @param settings   The settings of the tab groups, once they are loaded.
+         * @param tabFactory Creates tabs from their loaded settings.
+         */
+        private Profile(final TabIO<T> tabIO, final CompletableFuture<List<TabGroup<RoutedTab>>> settings,
+                        final Function<TabSettings, T> tabFactory) {
+            this.tabIO = tabIO;
+            this.settings = settings;
+            this.tabFactory = tabFactory;
+        }
+
+        /**
+         * Returns the tab groups, creating the tabs on first access. Waits for the settings if they are still being
+         * loaded. Must be called on the client thread.
+         *
+         * @return The tab groups.
+         */
+        public TabGroups<T> getTabs() {
+            if (tabs == null) {
+                final List<TabGroup<T>> groups = new ArrayList<>();
+                for (final TabGroup<RoutedTab> group : settings.join()) {
+                    groups.add(group.map(tab -> tabFactory.apply(tab.getSettings())));
+                }
+                tabs = new TabGroups<>(groups, tabFactory);
+            }
+            return tabs;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package nge.lk.mods.simpletabs.core;
+
+import lombok.Getter;
+import lombok.Setter;
+import nge.lk.mods.simpletabs.core.filter.FilterContext;
+import nge.lk.mods.simpletabs.core.filter.FilterMode;
+import nge.lk.mods.simpletabs.core.filter.FilterNode;
+import nge.lk.mods.simpletabs.core.filter.FilterPlan;
+import nge.lk.mods.simpletabs.core.filter.ParsedMessage;
+
+/**
+ * The configuration of a tab, including the filter which selects the messages the tab accepts.
+ */
+public class TabSettings {
+
+    /**
+     * The magic value used to represent infinite history.
+     */
+    public static final int HISTORY_INFINITE = -1;
+
+    /**
+     * The history setting of new tabs.
+     */
+    public static final float DEFAULT_HISTORY = 1.0f / 3.0f;
+
+    /**
+     * The magic value used to represent keeping lines until they are pushed out of the history.
+     */
+    public static final int RETENTION_FOREVER = 0;
+
+    /**
+     * The number of update counter ticks per minute.
+     */
+    private static final int TICKS_PER_MINUTE = 20 * 60;
+
+    /**
+     * The filter which selects the messages to accept. The node may be shared with other tabs.
+     */
+    @Getter private FilterNode filter;
+
+    /**
+     * The pattern string, for saving.
+     */
+    @Getter private String pattern;
+
+    /**
+     * How the pattern is interpreted.
+     */
+    @Getter private FilterMode mode;
+
+    /**
+     * Whether this tab has a whitelist.
+     */
+    @Getter private boolean whitelist;
+
+    /**
+     * Whether this tab will play sound notifications.
+     */
+    @Getter private boolean notify;
+
+    /**
+     * The prefix for sent messages in this tab.
+     */
+    @Getter @Setter private String prefix;
+
+    /**
+     * How much history is kept. Stored as the float representation to prevent precision loss.
+     */
+    @Getter @Setter private float history;
+
+    /**
+     * How many minutes received lines are kept, or {@link #RETENTION_FOREVER}.
+     */
+    @Getter @Setter private int retention;
+
+    /**
+     * Obtains the history size from a [0.0, 1.0] float.
+     *
+     * @param val The float.
+     * @return The history size.
+     */
+    public static int getHistorySize(final float val) {
+        final float maxVal = 0.99666f;  // Produces cutoff at approx. 1 million.
+        if (val >= maxVal) {
+            return HISTORY_INFINITE;
+        } else {
+            return (int) Math.floor(Math.pow(100.0f, 3.0f * val));
+        }
+    }
+
+    /**
+     * Creates the settings of the default tab, which accepts all messages.
+     *
+     * @return The settings.
+     */
+    public static TabSettings createDefault() {
+        return new TabSettings(".*", FilterMode.REGEX, true, false, "", DEFAULT_HISTORY, RETENTION_FOREVER);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param pattern   The pattern the tab listens for.
+     * @param mode      How the pattern is interpreted.
+     * @param whitelist Whether or not this tab uses a whitelist.
+     * @param notify    Whether or not this tab notifies the user when a message is received.
+     * @param prefix    The prefix for sent chat messages.
+     * @param history   The history setting.
+     * @param retention The minutes received lines are kept, or {@link #RETENTION_FOREVER}.
+     */
+    public TabSettings(final String pattern, final FilterMode mode, final boolean whitelist, final boolean notify,
+                       final String prefix, final float history, final int retention) {
+        this.prefix = prefix;
+        this.history = history;
+        this.retention = retention;
+        updatePattern(pattern, mode, whitelist, notify);
+    }
+
+    /**
+     * Updates the filter pattern.
+     *
+     * @param pattern   The new pattern.
+     * @param mode      How the pattern is interpreted.
+     * @param whitelist Whether the tab implements a whitelist or a blacklist.
+     * @param notify    Whether this tab will play notification sounds.
+     * @throws IllegalArgumentException If the pattern is not valid, see {@link FilterPlan#compile}.
+     */
+    public void updatePattern(final String pattern, final FilterMode mode, final boolean whitelist,
+                              final boolean notify) {
+        filter = FilterPlan.compile(pattern, mode);
+        this.pattern = pattern;
+        this.mode = mode;
+        this.whitelist = whitelist;
+        this.notify = notify;
+    }
+
+    /**
+     * Whether these settings accept the given message for display.
+     *
+     * @param message The message.
+     * @return Whether it is accepted.
+     */
+    public boolean acceptsMessage(final ParsedMessage message) {
+        return filter.evaluate(FilterContext.forMessage(message)) == whitelist;
+    }
+
+    /**
+     * Checks whether the pattern is a keyword.
+     *
+     * @return Whether the pattern is literal.
+     */
+    public boolean isLiteral() {
+        return mode == FilterMode.KEYWORD;
+    }
+
+    /**
+     * Returns the number of lines of history to keep.
+     *
+     * @return The history size, or {@link #HISTORY_INFINITE}.
+     */
+    public int getHistorySize() {
+        return getHistorySize(history);
+    }
+
+    /**
+     * Returns how long received lines are kept, in the scale of the chat's update counter.
+     *
+     * @return The number of ticks, or {@link #RETENTION_FOREVER}.
+     */
+    public int getRetentionTicks() {
+        return retention * TICKS_PER_MINUTE;
+    }
+
+    /**
+     * Checks whether these are the unchanged settings of the default tab.
+     *
+     * @return Whether the settings are the default settings.
+     */
+    public boolean isDefault() {
+        return mode == FilterMode.REGEX && whitelist && pattern.equals(".*") && prefix.isEmpty()
+                && retention == RETENTION_FOREVER;
+    }
+
+    /**
+     * Returns the export part of these settings.
+     *
+     * @return The export string.
+     */
+    public String getExport() {
+        return pattern + "§" + isLiteral() + "§" + prefix + "§" + whitelist + "§" + notify + "§" + history + "§"
+                + mode + "§" + retention;
+    }
+}
@@ -0,0 +1,261 @@
+package nge.lk.mods.simpletabs.core;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * A hierarchical timer wheel which schedules at most one timer per item. Scheduling, rescheduling and cancelling take
+ * constant time, and advancing the clock takes constant amortized time per tick and per expired timer.
+ *
+ * There are {@link #LEVELS} wheels of {@link #SLOTS} slots. A slot of the lowest wheel holds the timers expiring in one
+ * tick, a slot of each higher wheel spans a whole turn of the wheel below. Timers are placed on the lowest wheel which
+ * reaches their deadline, and move down a wheel whenever the wheel below completes a turn. Timers further away than
+ * all wheels reach wait on the highest wheel and are placed again when their slot comes up.
+ *
+ * @param <T> The type of the items.
+ */
+public class TimerWheel<T> {
+
+    /**
+     * The number of bits of the slot index of one wheel.
+     */
+    private static final int SLOT_BITS = 6;
+
+    /**
+     * The number of slots of one wheel.
+     */
+    private static final int SLOTS = 1 << SLOT_BITS;
+
+    /**
+     * The mask of the slot index of one wheel.
+     */
+    private static final int SLOT_MASK = SLOTS - 1;
+
+    /**
+     * The number of wheels. With one tick per slot of the lowest wheel, the wheels reach {@code 64^4} ticks.
+     */
+    private static final int LEVELS = 4;
+
+    /**
+     * The slots of all wheels, each holding the first timer of a linked list or {@code null}.
+     */
+    private final Timer<T>[][] wheels = createWheels();
+
+    /**
+     * The pending timer of each item.
+     */
+    private final Map<T, Timer<T>> timers = new HashMap<>();
+
+    /**
+     * The last tick which was processed.
+     */
+    private long now;
+
+    /**
+     * Creates the empty slots of all wheels.
+     *
+     * @param <T> The type of the items.
+     * @return The slots, indexed by level and slot.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <T> Timer<T>[][] createWheels() {
+        return new Timer[LEVELS][SLOTS];
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param now The current tick.
+     */
+    public TimerWheel(final long now) {
+        this.now = now;
+    }
+
+    /**
+     * Schedules the timer of an item, replacing its pending timer. Deadlines which passed already expire on the next
+     * tick.
+     *
+     * @param item     The item.
+     * @param deadline The tick when the timer expires.
+     */
+    public void schedule(final T item, final long deadline) {
+        Timer<T> timer = timers.get(item);
+        if (timer == null) {
+            timer = new Timer<>(item);
+            timers.put(item, timer);
+        } else {
+            unlink(timer);
+        }
+        timer.deadline = Math.max(deadline, now + 1);
+        link(timer);
+    }
+
+    /**
+     * Cancels the pending timer of an item, if there is one.
+     *
+     * @param item The item.
+     */
+    public void cancel(final T item) {
+        final Timer<T> timer = timers.remove(item);
+        if (timer != null) {
+            unlink(timer);
+        }
+    }
+
+    /**
+     * Checks whether an item has a pending timer.
+     *
+     * @param item The item.
+     * @return Whether the item's timer is pending.
+     */
+    public boolean isScheduled(final T item) {
+        return timers.containsKey(item);
+    }
+
+    /**
+     * Advances the clock, expiring the timers with deadlines up to the given tick. Items may be scheduled or cancelled
+     * from the callback.
+     *
+     * @param tick    The current tick. Ticks before the last processed tick are ignored.
+     * @param expired Called with the item of each expired timer.
+     */
+    public void advance(final long tick, final Consumer<? super T> expired) {
+        if (timers.isEmpty()) {
+            // Nothing can expire, so the ticks in between need no processing.
+            now = Math.max(now, tick);
+            return;
+        }
+
+        while (now < tick) {
+            now++;
+            if ((now & SLOT_MASK) == 0) {
+                cascade();
+            }
+
+            // The callback may change any timer, so the slot is read again for every timer.
+            final Timer<T>[] wheel = wheels[0];
+            final int slot = (int) (now & SLOT_MASK);
+            while (wheel[slot] != null) {
+                final Timer<T> timer = wheel[slot];
+                unlink(timer);
+                timers.remove(timer.item);
+                expired.accept(timer.item);
+            }
+        }
+    }
+
+    /**
+     * Moves the timers of the current slot of each higher wheel down, after the wheel below completed a turn.
+     */
+    private void cascade() {
+        for (int level = 1; level < LEVELS; level++) {
+            final int slot = (int) ((now >>> (level * SLOT_BITS)) & SLOT_MASK);
+            final Timer<T>[] wheel = wheels[level];
+            while (wheel[slot] != null) {
+                final Timer<T> timer = wheel[slot];
+                unlink(timer);
+                link(timer);
+            }
+
+            // The next wheel only advances when this one completed a turn, too.
+            if (slot != 0) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Places a timer in the slot of the lowest wheel which reaches its deadline.
+     *
+     * @param timer The timer, which is not in a slot and does not expire before the current tick.
+     */
+    private void link(final Timer<T> timer) {
+        // Timers moved down on their deadline land in the current slot, which is processed next.
+        final long delay = timer.deadline - now;
+        int level = 0;
+        while (level < LEVELS - 1 && delay >= 1L << ((level + 1) * SLOT_BITS)) {
+            level++;
+        }
+
+        // Timers beyond the highest wheel wait in the slot furthest away.
+        final long target = now + Math.min(delay, (1L << (LEVELS * SLOT_BITS)) - 1);
+        final Timer<T>[] wheel = wheels[level];
+        final int slot = (int) ((target >>> (level * SLOT_BITS)) & SLOT_MASK);
+
+        timer.wheel = wheel;
+        timer.slot = slot;
+        timer.previous = null;
+        timer.next = wheel[slot];
+        if (timer.next != null) {
+            timer.next.previous = timer;
+        }
+        wheel[slot] = timer;
+    }
+
+    /**
+     * Removes a timer from its slot.
+     *
+     * @param timer The timer, which is in a slot.
+     */
+    private void unlink(final Timer<T> timer) {
+        if (timer.previous != null) {
+            timer.previous.next = timer.next;
+        } else {
+            timer.wheel[timer.slot] = timer.next;
+        }
+        if (timer.next != null) {
+            timer.next.previous = timer.previous;
+        }
+        timer.wheel = null;
+        timer.previous = null;
+        timer.next = null;
+    }
+
+    /**
+     * The pending timer of an item, linked into a slot.
+     *
+     * @param <T> The type of the item.
+     */
+    private static final class Timer<T> {
+
+        /**
+         * The item.
+         */
+        private final T item;
+
+        /**
+         * The tick when the timer expires.
+         */
+        private long deadline;
+
+        /**
+         * The wheel holding the timer.
+         */
+        private Timer<T>[] wheel;
+
+        /**
+         * The slot holding the timer.
+         */
+        private int slot;
+
+        /**
+         * The previous timer in the slot, or {@code null}.
+         */
+        private Timer<T> previous;
+
+        /**
+         * The next timer in the slot, or {@code null}.
+         */
+        private Timer<T> next;
+
+        /**
+         * Constructor.
+         *
+         * @param item The item.
+         */
+        private Timer(final T item) {
+            this.item = item;
+        }
+    }
+}
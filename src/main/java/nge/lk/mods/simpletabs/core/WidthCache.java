@@ -0,0 +1,64 @@
+package nge.lk.mods.simpletabs.core;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.function.ToIntFunction;
+
+/**
+ * A bounded least-recently-used cache of rendered text widths.
+ *
+ * Chat is dominated by repeated names and phrases, so most style runs and words were measured before. The cache has to
+ * be invalidated whenever glyph widths change, i.e. on resource reloads and when the unicode font is toggled.
+ */
+public class WidthCache {
+
+    /**
+     * Measures text which is not cached.
+     */
+    private final ToIntFunction<String> measure;
+
+    /**
+     * The cached widths in a {@code Text -> Width} mapping, in access order.
+     */
+    private final Map<String, Integer> widths;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity The maximum number of cached texts.
+     * @param measure  Measures text which is not cached.
+     */
+    public WidthCache(final int capacity, final ToIntFunction<String> measure) {
+        this.measure = measure;
+        widths = new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Entry<String, Integer> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the width of a text.
+     *
+     * @param text The text, possibly with formatting codes.
+     * @return The width.
+     */
+    public int getWidth(final String text) {
+        final Integer cached = widths.get(text);
+        if (cached != null) {
+            return cached;
+        }
+        final int width = measure.applyAsInt(text);
+        widths.put(text, width);
+        return width;
+    }
+
+    /**
+     * Drops all cached widths.
+     */
+    public void invalidate() {
+        widths.clear();
+    }
+}
@@ -0,0 +1,38 @@
+package nge.lk.mods.simpletabs.core.filter;
+
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Matches if a field contains a keyword.
+ */
+@RequiredArgsConstructor
+@EqualsAndHashCode(callSuper = false)
+public class ContainsNode extends FilterNode {
+
+    /**
+     * The inspected field.
+     */
+    private final MessageField field;
+
+    /**
+     * The keyword.
+     */
+    private final String keyword;
+
+    @Override
+    protected boolean test(final FilterContext context) {
+        final String value = context.getField(field);
+        return value != null && value.contains(keyword);
+    }
+
+    @Override
+    public Boolean evaluateCheaply(final FilterContext context) {
+        return evaluate(context);
+    }
+
+    @Override
+    protected double estimateCost() {
+        return 20.0;
+    }
+}
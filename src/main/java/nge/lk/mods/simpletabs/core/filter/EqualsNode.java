@@ -0,0 +1,38 @@
+package nge.lk.mods.simpletabs.core.filter;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Matches if a field has exactly the given value.
+ */
+@RequiredArgsConstructor
+@EqualsAndHashCode(callSuper = false)
+public class EqualsNode extends FilterNode {
+
+    /**
+     * The inspected field.
+     */
+    @Getter private final MessageField field;
+
+    /**
+     * The value.
+     */
+    @Getter private final String value;
+
+    @Override
+    protected boolean test(final FilterContext context) {
+        return value.equals(context.getField(field));
+    }
+
+    @Override
+    public Boolean evaluateCheaply(final FilterContext context) {
+        return evaluate(context);
+    }
+
+    @Override
+    protected double estimateCost() {
+        return 10.0;
+    }
+}
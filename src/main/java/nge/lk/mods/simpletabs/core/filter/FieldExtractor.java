@@ -0,0 +1,219 @@
+package nge.lk.mods.simpletabs.core.filter;
+
+import nge.lk.mods.commonlib.util.DebugUtil;
+import nge.lk.mods.commonlib.util.FileUtil;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Extracts the channel, sender and body of messages using configurable rules.
+ *
+ * Each rule is a regular expression with the named groups {@code channel}, {@code sender} and {@code body}, all of
+ * which are optional. The first matching rule determines the fields. Channel and sender found in the message's
+ * components take precedence over the rules. The first word and the first bracketed tag don't depend on the rules.
+ */
+public class FieldExtractor {
+
+    /**
+     * The rules which are used if none are configured. They cover {@code [Channel] <Sender> Body},
+     * {@code [Channel] Sender: Body} and the forms without channel or sender.
+     */
+    public static final List<String> DEFAULT_RULES = Collections.unmodifiableList(Arrays.asList(
+            "^(?:\\[(?<channel>[^\\]]+)\\] ?)?<(?<sender>[^>]+)> ?(?<body>.*)$",
+            "^(?:\\[(?<channel>[^\\]]+)\\] ?)?(?<sender>[^ :]+): (?<body>.*)$",
+            "^\\[(?<channel>[^\\]]+)\\] ?(?<body>.*)$"
+    ));
+
+    /**
+     * The rules, in order.
+     */
+    private final List<Rule> rules = new ArrayList<>();
+
+    /**
+     * Loads the rules from a file. If the file does not exist, it is created with the default rules.
+     *
+     * @param file The file.
+     * @return The extractor.
+     */
+    public static FieldExtractor load(final File file) {
+        if (!file.exists()) {
+            try {
+                FileUtil.writeLineStorage(1, file, DEFAULT_RULES.iterator());
+            } catch (final IOException e) {
+                DebugUtil.recoverableError(e);
+            }
+            return new FieldExtractor(DEFAULT_RULES);
+        }
+
+        final List<String> loaded = new ArrayList<>();
+        try {
+            FileUtil.readLineStorage(file, (line, lineNo) -> loaded.add(line), (version, line) -> line);
+            return new FieldExtractor(loaded);
+        } catch (final IOException | IllegalArgumentException e) {
+            DebugUtil.recoverableError(e);
+            return new FieldExtractor(DEFAULT_RULES);
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param rules The rules, in order.
+     * @throws IllegalArgumentException If a rule is not a valid regular expression.
+     */
+    public FieldExtractor(final Iterable<String> rules) {
+        for (final String rule : rules) {
+            this.rules.add(new Rule(rule));
+        }
+    }
+
+    /**
+     * Parses a message.
+     *
+     * @param plainMessage The message, without formatting codes.
+     * @param channelHint  The channel as found in the message's components, or {@code null}.
+     * @param senderHint   The sender as found in the message's components, or {@code null}.
+     * @return The parsed message, whose fields are extracted on first access.
+     */
+    public ParsedMessage parse(final String plainMessage, @Nullable final String channelHint,
+                               @Nullable final String senderHint) {
+        return new ParsedMessage(plainMessage, channelHint, () -> senderHint, senderHint, this);
+    }
+
+    /**
+     * Parses a message whose sender is looked up in its components only if a filter needs the sender.
+     *
+     * @param plainMessage The message, without formatting codes.
+     * @param channelHint  The channel as found in the message's components, or {@code null}.
+     * @param senderLookup Looks up the sender in the message's components, returning {@code null} if they don't
+     *                     identify the sender.
+     * @param components   The message's components, which determine the sender.
+     * @return The parsed message, whose fields are extracted on first access.
+     */
+    public ParsedMessage parse(final String plainMessage, @Nullable final String channelHint,
+                               final Supplier<String> senderLookup, final Object components) {
+        return new ParsedMessage(plainMessage, channelHint, senderLookup, components, this);
+    }
+
+    /**
+     * Extracts the fields of a message. The sender is overridden by the message's sender hint, if it has one.
+     *
+     * @param plainMessage The message, without formatting codes.
+     * @param channelHint  The channel as found in the message's components, or {@code null}.
+     * @return The fields, indexed by the field's ordinal.
+     */
+    String[] extractFields(final String plainMessage, @Nullable final String channelHint) {
+        final String[] extracted = new String[MessageField.values().length];
+        extracted[MessageField.TEXT.ordinal()] = plainMessage;
+        extracted[MessageField.BODY.ordinal()] = plainMessage;
+        for (final Rule rule : rules) {
+            if (rule.apply(plainMessage, extracted)) {
+                break;
+            }
+        }
+
+        extractKeys(plainMessage, extracted);
+
+        if (channelHint != null) {
+            extracted[MessageField.CHANNEL.ordinal()] = channelHint;
+        }
+        return extracted;
+    }
+
+    /**
+     * Extracts the fields at fixed positions, which don't depend on the rules.
+     *
+     * @param plainMessage The message, without formatting codes.
+     * @param extracted    Receives the extracted fields.
+     */
+    private static void extractKeys(final String plainMessage, final String[] extracted) {
+        final int wordEnd = plainMessage.indexOf(' ');
+        extracted[MessageField.PREFIX.ordinal()] = wordEnd < 0 ? plainMessage : plainMessage.substring(0, wordEnd);
+
+        final int tagStart = plainMessage.indexOf('[');
+        if (tagStart >= 0) {
+            final int tagEnd = plainMessage.indexOf(']', tagStart + 1);
+            if (tagEnd > tagStart + 1) {
+                extracted[MessageField.TAG.ordinal()] = plainMessage.substring(tagStart + 1, tagEnd);
+            }
+        }
+    }
+
+    /**
+     * An extraction rule.
+     */
+    private static final class Rule {
+
+        /**
+         * The regular expression.
+         */
+        private final Pattern pattern;
+
+        /**
+         * The matcher, one per thread.
+         */
+        private final ThreadLocal<Matcher> matcher;
+
+        /**
+         * Whether the rule extracts the channel.
+         */
+        private final boolean hasChannel;
+
+        /**
+         * Whether the rule extracts the sender.
+         */
+        private final boolean hasSender;
+
+        /**
+         * Whether the rule extracts the body.
+         */
+        private final boolean hasBody;
+
+        /**
+         * Constructor.
+         *
+         * @param regex The regular expression.
+         */
+        private Rule(final String regex) {
+            pattern = Pattern.compile(regex);
+            matcher = ThreadLocal.withInitial(() -> pattern.matcher(""));
+            hasChannel = regex.contains("(?<channel>");
+            hasSender = regex.contains("(?<sender>");
+            hasBody = regex.contains("(?<body>");
+        }
+
+        /**
+         * Applies the rule to a message.
+         *
+         * @param plainMessage The message.
+         * @param extracted    Receives the extracted fields.
+         * @return Whether the rule matched.
+         */
+        private boolean apply(final String plainMessage, final String[] extracted) {
+            final Matcher m = matcher.get();
+            m.reset(plainMessage);
+            if (!m.find()) {
+                return false;
+            }
+            if (hasChannel) {
+                extracted[MessageField.CHANNEL.ordinal()] = m.group("channel");
+            }
+            if (hasSender) {
+                extracted[MessageField.SENDER.ordinal()] = m.group("sender");
+            }
+            if (hasBody && m.group("body") != null) {
+                extracted[MessageField.BODY.ordinal()] = m.group("body").trim();
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package nge.lk.mods.simpletabs.core.filter;
+
+import java.util.Arrays;
+
+/**
+ * The evaluation state of one message on one thread.
+ *
+ * Results of filter nodes are memoized per message, so sub-expressions shared by several tabs are evaluated only once
+ * per message. Each thread has its own context, so the parallel classifier needs no synchronization.
+ */
+public final class FilterContext {
+
+    /**
+     * The context of each thread.
+     */
+    private static final ThreadLocal<FilterContext> CONTEXTS = ThreadLocal.withInitial(FilterContext::new);
+
+    /**
+     * The message which is currently evaluated.
+     */
+    private ParsedMessage message;
+
+    /**
+     * The current message's number. Memoized results are valid if their stamp equals this number.
+     */
+    private int epoch;
+
+    /**
+     * The generation of the node IDs when the current message's number was assigned.
+     */
+    private int idGeneration;
+
+    /**
+     * The message number for which each node's result was memoized, indexed by node ID.
+     */
+    private int[] stamps = new int[64];
+
+    /**
+     * The memoized result of each node, indexed by node ID.
+     */
+    private boolean[] results = new boolean[64];
+
+    /**
+     * Returns the context of the current thread, prepared for the given message.
+     *
+     * @param message The message.
+     * @return The context.
+     */
+    public static FilterContext forMessage(final ParsedMessage message) {
+        final FilterContext context = CONTEXTS.get();
+        final int idGeneration = NodeIds.getGeneration();
+        if (context.message != message || context.idGeneration != idGeneration) {
+            // A new node may have reused the ID of a collected node, so its memoized results have to be discarded.
+            context.message = message;
+            context.idGeneration = idGeneration;
+            context.epoch++;
+            if (context.epoch == 0) {
+                // The stamps wrapped around, so old stamps could be mistaken for current ones.
+                Arrays.fill(context.stamps, 0);
+                context.epoch = 1;
+            }
+        }
+        return context;
+    }
+
+    /**
+     * Returns the message.
+     *
+     * @return The message, without formatting codes.
+     */
+    public String getMessage() {
+        return message.getText();
+    }
+
+    /**
+     * Returns a field of the message.
+     *
+     * @param field The field.
+     * @return The value of the field, or {@code null} if the message does not have that field.
+     */
+    public String getField(final MessageField field) {
+        return message.getField(field);
+    }
+
+    /**
+     * Checks whether the node with the given ID has a memoized result for the current message.
+     *
+     * @param id The node ID.
+     * @return Whether there is a memoized result.
+     */
+    boolean isMemoized(final int id) {
+        return id < stamps.length && stamps[id] == epoch;
+    }
+
+    /**
+     * Returns the memoized result of a node.
+     *
+     * @param id The node ID.
+     * @return The result.
+     */
+    boolean getMemoized(final int id) {
+        return results[id];
+    }
+
+    /**
+     * Memoizes the result of a node for the current message.
+     *
+     * @param id     The node ID.
+     * @param result The result.
+     */
+    void memoize(final int id, final boolean result) {
+        if (id >= stamps.length) {
+            final int capacity = Math.max(id + 1, stamps.length * 2);
+            stamps = Arrays.copyOf(stamps, capacity);
+            results = Arrays.copyOf(results, capacity);
+        }
+        stamps[id] = epoch;
+        results[id] = result;
+    }
+}
@@ -0,0 +1,32 @@
+package nge.lk.mods.simpletabs.core.filter;
+
+/**
+ * The ways in which the pattern of a tab can be interpreted.
+ */
+public enum FilterMode {
+
+    /**
+     * The pattern is a keyword which has to be contained in the message.
+     */
+    KEYWORD,
+
+    /**
+     * The pattern is a regular expression which has to be found in the message.
+     */
+    REGEX,
+
+    /**
+     * The pattern is a boolean filter expression.
+     */
+    EXPRESSION,
+
+    /**
+     * The pattern is a key which has to equal the first word of the message.
+     */
+    PREFIX,
+
+    /**
+     * The pattern is a key which has to equal the first bracketed tag of the message.
+     */
+    TAG
+}
@@ -0,0 +1,119 @@
+package nge.lk.mods.simpletabs.core.filter;
+
+/**
+ * A node of a compiled filter expression.
+ *
+ * Nodes are interned by the {@link FilterPlan}, so equal sub-expressions of different tabs are the same node. Every
+ * node measures its own cost and how often it matches, which junctions use to order their operands. The statistics are
+ * updated without synchronization, so concurrent evaluation can only skew them slightly.
+ */
+public abstract class FilterNode {
+
+    /**
+     * Only one in this many evaluations (plus one) is timed.
+     */
+    private static final long SAMPLE_MASK = 0x3F;
+
+    /**
+     * The ID of this node, used for memoizing results. IDs of collected nodes are reused.
+     */
+    private final int id = NodeIds.acquire(this);
+
+    /**
+     * How often this node was evaluated.
+     */
+    private long evaluations;
+
+    /**
+     * How often this node matched.
+     */
+    private long matches;
+
+    /**
+     * The number of timed evaluations.
+     */
+    private long samples;
+
+    /**
+     * The total time of the timed evaluations, in nanoseconds.
+     */
+    private long sampledNanos;
+
+    /**
+     * Evaluates this node for the message of the given context, reusing the memoized result if there is one.
+     *
+     * @param context The evaluation context.
+     * @return Whether the message matches.
+     */
+    public final boolean evaluate(final FilterContext context) {
+        if (context.isMemoized(id)) {
+            return context.getMemoized(id);
+        }
+
+        final boolean result;
+        if ((evaluations++ & SAMPLE_MASK) == 0) {
+            final long start = System.nanoTime();
+            result = test(context);
+            sampledNanos += System.nanoTime() - start;
+            samples++;
+        } else {
+            result = test(context);
+        }
+
+        if (result) {
+            matches++;
+        }
+        context.memoize(id, result);
+        return result;
+    }
+
+    /**
+     * Evaluates this node for the message of the given context if that is cheap, i.e. without running general regular
+     * expressions. Used to decide whether a message has to be kept for matching it later.
+     *
+     * @param context The evaluation context.
+     * @return Whether the message matches, or {@code null} if that can't be decided cheaply.
+     */
+    public Boolean evaluateCheaply(final FilterContext context) {
+        return null;
+    }
+
+    /**
+     * Returns the average cost of evaluating this node.
+     *
+     * @return The cost in nanoseconds, or an estimate if nothing was measured yet.
+     */
+    public double getCost() {
+        return samples == 0 ? estimateCost() : (double) sampledNanos / samples;
+    }
+
+    /**
+     * Returns how often this node matches.
+     *
+     * @return The fraction of evaluations which matched, or {@code 0.5} if nothing was measured yet.
+     */
+    public double getMatchRate() {
+        return evaluations == 0 ? 0.5 : (double) matches / evaluations;
+    }
+
+    /**
+     * Evaluates this node without memoization.
+     *
+     * @param context The evaluation context.
+     * @return Whether the message matches.
+     */
+    protected abstract boolean test(FilterContext context);
+
+    /**
+     * Estimates the cost of this node before it was measured.
+     *
+     * @return The estimated cost in nanoseconds.
+     */
+    protected abstract double estimateCost();
+
+    /**
+     * Prepares this node and its operands for evaluation, e.g. by compiling regular expressions.
+     */
+    protected void precompile() {
+    }
+}
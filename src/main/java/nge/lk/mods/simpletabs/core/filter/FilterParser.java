@@ -0,0 +1,253 @@
+package nge.lk.mods.simpletabs.core.filter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Parses filter expressions.
+ *
+ * The grammar is:
+ * <pre>
+ * expression := conjunction ('|' conjunction)*
+ * conjunction := unary ('&amp;' unary)*
+ * unary := '!' unary | '(' expression ')' | predicate
+ * predicate := [field ('=' | '~')] (string | regex)
+ * </pre>
+ * where a string is written in double quotes and a regex between slashes. Without a field, the whole message is
+ * inspected. {@code field="x"} matches the exact value, {@code field~"x"} matches if the field contains the string.
+ * {@code &&} and {@code ||} are accepted as well.
+ */
+class FilterParser {
+
+    /**
+     * The expression.
+     */
+    private final String source;
+
+    /**
+     * Whether the expression is only validated. Nodes are not interned then, and regular expressions are compiled
+     * right away.
+     */
+    private final boolean validateOnly;
+
+    /**
+     * The current position in the expression.
+     */
+    private int pos;
+
+    /**
+     * Constructor.
+     *
+     * @param source       The expression.
+     * @param validateOnly Whether the expression is only validated.
+     */
+    FilterParser(final String source, final boolean validateOnly) {
+        this.source = source;
+        this.validateOnly = validateOnly;
+    }
+
+    /**
+     * Parses the whole expression.
+     *
+     * @return The root node.
+     */
+    FilterNode parse() {
+        final FilterNode root = parseDisjunction();
+        skipWhitespace();
+        if (pos < source.length()) {
+            throw error("unexpected '" + source.charAt(pos) + "'");
+        }
+        return root;
+    }
+
+    /**
+     * Parses a disjunction.
+     *
+     * @return The node.
+     */
+    private FilterNode parseDisjunction() {
+        final List<FilterNode> operands = new ArrayList<>();
+        operands.add(parseConjunction());
+        while (accept('|')) {
+            accept('|');
+            operands.add(parseConjunction());
+        }
+        if (operands.size() == 1) {
+            return operands.get(0);
+        }
+        return intern(() -> new JunctionNode(false, operands), JunctionNode.class, false, operands);
+    }
+
+    /**
+     * Parses a conjunction.
+     *
+     * @return The node.
+     */
+    private FilterNode parseConjunction() {
+        final List<FilterNode> operands = new ArrayList<>();
+        operands.add(parseUnary());
+        while (accept('&')) {
+            accept('&');
+            operands.add(parseUnary());
+        }
+        if (operands.size() == 1) {
+            return operands.get(0);
+        }
+        return intern(() -> new JunctionNode(true, operands), JunctionNode.class, true, operands);
+    }
+
+    /**
+     * Parses a negation, a parenthesized expression or a predicate.
+     *
+     * @return The node.
+     */
+    private FilterNode parseUnary() {
+        if (accept('!')) {
+            final FilterNode operand = parseUnary();
+            return intern(() -> new NotNode(operand), NotNode.class, operand);
+        }
+        if (accept('(')) {
+            final FilterNode inner = parseDisjunction();
+            expect(')');
+            return inner;
+        }
+        return parsePredicate();
+    }
+
+    /**
+     * Parses a predicate.
+     *
+     * @return The node.
+     */
+    private FilterNode parsePredicate() {
+        skipWhitespace();
+        MessageField field = MessageField.TEXT;
+        boolean exact = false;
+        if (pos < source.length() && Character.isLetter(source.charAt(pos))) {
+            final int start = pos;
+            while (pos < source.length() && Character.isLetter(source.charAt(pos))) {
+                pos++;
+            }
+            final String name = source.substring(start, pos);
+            field = MessageField.byName(name);
+            if (field == null) {
+                pos = start;
+                throw error("unknown field '" + name + "'");
+            }
+            if (accept('=')) {
+                exact = true;
+            } else if (!accept('~')) {
+                throw error("expected '=' or '~'");
+            }
+        }
+
+        skipWhitespace();
+        if (pos < source.length() && source.charAt(pos) == '/') {
+            if (exact) {
+                throw error("'=' needs a string, use '~' for regular expressions");
+            }
+            final String regex = readQuoted('/');
+            if (validateOnly) {
+                Pattern.compile(regex);
+            }
+            final MessageField regexField = field;
+            return intern(() -> new RegexNode(regexField, regex), RegexNode.class, field, regex);
+        }
+        if (pos < source.length() && source.charAt(pos) == '"') {
+            final String value = readQuoted('"');
+            final MessageField valueField = field;
+            return exact ? intern(() -> new EqualsNode(valueField, value), EqualsNode.class, field, value)
+                    : intern(() -> new ContainsNode(valueField, value), ContainsNode.class, field, value);
+        }
+        throw error("expected a string or a regular expression");
+    }
+
+    /**
+     * Reads a quoted token. The quote character can be escaped with a backslash. In regular expressions, all other
+     * escapes are kept for the regex engine.
+     *
+     * @param quote The quote character.
+     * @return The unquoted token.
+     */
+    private String readQuoted(final char quote) {
+        final int start = pos++;
+        final StringBuilder token = new StringBuilder();
+        while (pos < source.length()) {
+            final char c = source.charAt(pos++);
+            if (c == quote) {
+                return token.toString();
+            }
+            if (c == '\\' && pos < source.length()) {
+                final char escaped = source.charAt(pos++);
+                if (escaped != quote && (quote == '/' || escaped != '\\')) {
+                    token.append(c);
+                }
+                token.append(escaped);
+            } else {
+                token.append(c);
+            }
+        }
+        pos = start;
+        throw error("unterminated " + quote);
+    }
+
+    /**
+     * Returns the canonical node of the given type and arguments, or a new node if the expression is only validated.
+     *
+     * @param factory   Builds the node.
+     * @param type      The type of the node.
+     * @param arguments The arguments of the node.
+     * @return The node.
+     */
+    private FilterNode intern(final Supplier<FilterNode> factory, final Class<? extends FilterNode> type,
+                              final Object... arguments) {
+        return validateOnly ? factory.get() : FilterPlan.intern(factory, type, arguments);
+    }
+
+    /**
+     * Consumes the given character if it is next.
+     *
+     * @param c The character.
+     * @return Whether it was consumed.
+     */
+    private boolean accept(final char c) {
+        skipWhitespace();
+        if (pos < source.length() && source.charAt(pos) == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Consumes the given character, which has to be next.
+     *
+     * @param c The character.
+     */
+    private void expect(final char c) {
+        if (!accept(c)) {
+            throw error("expected '" + c + "'");
+        }
+    }
+
+    /**
+     * Skips whitespace.
+     */
+    private void skipWhitespace() {
+        while (pos < source.length() && Character.isWhitespace(source.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    /**
+     * Creates an exception for a syntax error at the current position.
+     *
+     * @param message The description of the error.
+     * @return The exception.
+     */
+    private FilterSyntaxException error(final String message) {
+        return new FilterSyntaxException(message, source, pos);
+    }
+}
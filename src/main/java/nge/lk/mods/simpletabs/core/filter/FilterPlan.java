@@ -0,0 +1,128 @@
+package nge.lk.mods.simpletabs.core.filter;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Compiles tab patterns into filter nodes which are shared across all tabs.
+ *
+ * Every node is interned, so a sub-expression used by several tabs is a single node, which is evaluated only once per
+ * message thanks to the memoization in {@link FilterContext}. Nodes are looked up by their type and arguments before
+ * they are built, so compiling a pattern again neither builds nor numbers duplicate nodes. Nodes are held weakly, so
+ * nodes which are no longer used by any tab are garbage collected.
+ */
+public final class FilterPlan {
+
+    /**
+     * The interned nodes in a {@code [Type, Arguments...] -> Node} mapping.
+     */
+    private static final Cache<List<Object>, FilterNode> NODES = CacheBuilder.newBuilder().weakValues().build();
+
+    /**
+     * Compiles a tab pattern.
+     *
+     * @param pattern The pattern.
+     * @param mode    How the pattern is interpreted.
+     * @return The root node of the filter.
+     * @throws IllegalArgumentException If the pattern is not valid. Regular expressions are only compiled on first use,
+     *                                  so they have to be checked with {@link #validate} beforehand.
+     */
+    public static FilterNode compile(final String pattern, final FilterMode mode) {
+        switch (mode) {
+            case KEYWORD:
+                return intern(() -> new ContainsNode(MessageField.TEXT, pattern), ContainsNode.class,
+                        MessageField.TEXT, pattern);
+            case REGEX:
+                return intern(() -> new RegexNode(MessageField.TEXT, pattern), RegexNode.class, MessageField.TEXT,
+                        pattern);
+            case EXPRESSION:
+                return new FilterParser(pattern, false).parse();
+            case PREFIX:
+                final String prefix = checkKey(pattern);
+                return intern(() -> new EqualsNode(MessageField.PREFIX, prefix), EqualsNode.class, MessageField.PREFIX,
+                        prefix);
+            case TAG:
+                final String tag = checkKey(pattern);
+                final boolean bracketed = tag.length() > 2 && tag.startsWith("[") && tag.endsWith("]");
+                final String key = bracketed ? tag.substring(1, tag.length() - 1) : tag;
+                return intern(() -> new EqualsNode(MessageField.TAG, key), EqualsNode.class, MessageField.TAG, key);
+            default:
+                throw new IllegalArgumentException("unknown filter mode: " + mode);
+        }
+    }
+
+    /**
+     * Checks whether a tab pattern is valid, without retaining anything.
+     *
+     * @param pattern The pattern.
+     * @param mode    How the pattern is interpreted.
+     * @throws IllegalArgumentException If the pattern is not valid.
+     */
+    public static void validate(final String pattern, final FilterMode mode) {
+        switch (mode) {
+            case REGEX:
+                Pattern.compile(pattern);
+                break;
+            case EXPRESSION:
+                new FilterParser(pattern, true).parse();
+                break;
+            case PREFIX:
+            case TAG:
+                checkKey(pattern);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Prepares filters before returning, compiling their regular expressions in parallel.
+     *
+     * @param filters The filters.
+     */
+    public static void precompileNow(final Collection<FilterNode> filters) {
+        filters.parallelStream().forEach(FilterNode::precompile);
+    }
+
+    /**
+     * Checks that a key is a single word.
+     *
+     * @param key The key.
+     * @return The key.
+     * @throws IllegalArgumentException If the key is empty or contains whitespace.
+     */
+    private static String checkKey(final String key) {
+        if (key.isEmpty() || key.chars().anyMatch(Character::isWhitespace)) {
+            throw new IllegalArgumentException("keys have to be a single word: " + key);
+        }
+        return key;
+    }
+
+    /**
+     * Returns the canonical node of the given type and arguments, building it only if there is none.
+     *
+     * @param factory   Builds the node.
+     * @param type      The type of the node.
+     * @param arguments The arguments of the node, which have to determine the node together with its type.
+     * @return The canonical node.
+     */
+    static FilterNode intern(final Supplier<FilterNode> factory, final Class<? extends FilterNode> type,
+                             final Object... arguments) {
+        final Object[] key = new Object[arguments.length + 1];
+        key[0] = type;
+        System.arraycopy(arguments, 0, key, 1, arguments.length);
+        return NODES.asMap().computeIfAbsent(Arrays.asList(key), k -> factory.get());
+    }
+
+    /**
+     * Utility class.
+     */
+    private FilterPlan() {
+    }
+}
@@ -0,0 +1,23 @@
+package nge.lk.mods.simpletabs.core.filter;
+
+/**
+ * Thrown if a filter expression can't be parsed.
+ */
+public class FilterSyntaxException extends IllegalArgumentException {
+
+    /**
+     * The serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructor.
+     *
+     * @param message  The description of the error.
+     * @param source   The filter expression.
+     * @param position The position of the error in the expression.
+     */
+    public FilterSyntaxException(final String message, final String source, final int position) {
+        super(message + " at position " + position + " in: " + source);
+    }
+}
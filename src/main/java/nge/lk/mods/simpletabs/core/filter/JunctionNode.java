@@ -0,0 +1,145 @@
+package nge.lk.mods.simpletabs.core.filter;
+
+import lombok.EqualsAndHashCode;
+
+import java.util.List;
+
+/**
+ * Matches if all operands match (conjunction) or if any operand matches (disjunction).
+ *
+ * The operands are evaluated in the order of their rank, so checks which are cheap and likely to decide the result run
+ * first. The order is recomputed from the measured statistics of the operands every few hundred evaluations.
+ */
+@EqualsAndHashCode(callSuper = false, of = {"conjunction", "operands"})
+public class JunctionNode extends FilterNode {
+
+    /**
+     * The number of evaluations after which the operands are reordered.
+     */
+    private static final int REORDER_INTERVAL = 256;
+
+    /**
+     * Prevents division by zero for operands which never decide the result.
+     */
+    private static final double MIN_PROBABILITY = 0.001;
+
+    /**
+     * Whether this is a conjunction ({@code true}) or a disjunction ({@code false}).
+     */
+    private final boolean conjunction;
+
+    /**
+     * The operands in the order in which they were written.
+     */
+    private final List<FilterNode> operands;
+
+    /**
+     * The operands in evaluation order. Replaced as a whole, so concurrent evaluations always see a complete order.
+     */
+    private volatile FilterNode[] evaluationOrder;
+
+    /**
+     * The number of evaluations since the last reordering.
+     */
+    private int evaluationsSinceReorder;
+
+    /**
+     * Constructor.
+     *
+     * @param conjunction Whether this is a conjunction ({@code true}) or a disjunction ({@code false}).
+     * @param operands    The operands.
+     */
+    public JunctionNode(final boolean conjunction, final List<FilterNode> operands) {
+        this.conjunction = conjunction;
+        this.operands = operands;
+        evaluationOrder = operands.toArray(new FilterNode[0]);
+        reorder();
+    }
+
+    @Override
+    protected boolean test(final FilterContext context) {
+        if (++evaluationsSinceReorder >= REORDER_INTERVAL) {
+            evaluationsSinceReorder = 0;
+            reorder();
+        }
+
+        // A conjunction is decided by the first false operand, a disjunction by the first true operand.
+        for (final FilterNode operand : evaluationOrder) {
+            if (operand.evaluate(context) != conjunction) {
+                return !conjunction;
+            }
+        }
+        return conjunction;
+    }
+
+    @Override
+    public Boolean evaluateCheaply(final FilterContext context) {
+        // An operand deciding the result decides it even if other operands are not cheap.
+        boolean decided = true;
+        for (final FilterNode operand : evaluationOrder) {
+            final Boolean result = operand.evaluateCheaply(context);
+            if (result == null) {
+                decided = false;
+            } else if (result != conjunction) {
+                return !conjunction;
+            }
+        }
+        return decided ? conjunction : null;
+    }
+
+    @Override
+    protected double estimateCost() {
+        double cost = 0.0;
+        for (final FilterNode operand : operands) {
+            cost += operand.getCost();
+        }
+        return cost;
+    }
+
+    @Override
+    protected void precompile() {
+        for (final FilterNode operand : operands) {
+            operand.precompile();
+        }
+    }
+
+    /**
+     * Sorts the operands by their expected cost per decided evaluation, i.e. the cost divided by the probability that
+     * the operand decides the result.
+     */
+    private void reorder() {
+        final FilterNode[] order = evaluationOrder.clone();
+
+        // The statistics may change concurrently, so the ranks are taken once before sorting.
+        final double[] ranks = new double[order.length];
+        for (int i = 0; i < order.length; i++) {
+            ranks[i] = getRank(order[i]);
+        }
+
+        // Insertion sort, junctions only have a few operands.
+        for (int i = 1; i < order.length; i++) {
+            final FilterNode operand = order[i];
+            final double rank = ranks[i];
+            int j = i - 1;
+            while (j >= 0 && ranks[j] > rank) {
+                order[j + 1] = order[j];
+                ranks[j + 1] = ranks[j];
+                j--;
+            }
+            order[j + 1] = operand;
+            ranks[j + 1] = rank;
+        }
+        evaluationOrder = order;
+    }
+
+    /**
+     * Returns the rank of an operand. Lower ranks are evaluated first.
+     *
+     * @param operand The operand.
+     * @return The rank.
+     */
+    private double getRank(final FilterNode operand) {
+        final double decideProbability = conjunction ? 1.0 - operand.getMatchRate() : operand.getMatchRate();
+        return operand.getCost() / Math.max(MIN_PROBABILITY, decideProbability);
+    }
+}
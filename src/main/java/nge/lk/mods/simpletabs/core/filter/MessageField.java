@@ -0,0 +1,52 @@
+package nge.lk.mods.simpletabs.core.filter;
+
+/**
+ * The parts of a message which filter predicates can inspect.
+ */
+public enum MessageField {
+
+    /**
+     * The whole message.
+     */
+    TEXT,
+
+    /**
+     * The channel tag, e.g. {@code Trade} for {@code [Trade] <Bob> hi}.
+     */
+    CHANNEL,
+
+    /**
+     * The name of the sender, e.g. {@code Bob} for {@code [Trade] <Bob> hi}.
+     */
+    SENDER,
+
+    /**
+     * The message without channel and sender, e.g. {@code hi} for {@code [Trade] <Bob> hi}.
+     */
+    BODY,
+
+    /**
+     * The first word of the message, e.g. {@code [Trade]} for {@code [Trade] <Bob> hi}.
+     */
+    PREFIX,
+
+    /**
+     * The first bracketed tag of the message without the brackets, e.g. {@code Trade} for {@code <Bob> [Trade] hi}.
+     */
+    TAG;
+
+    /**
+     * Finds the field with the given name, ignoring case.
+     *
+     * @param name The name.
+     * @return The field, or {@code null} if there is no such field.
+     */
+    public static MessageField byName(final String name) {
+        for (final MessageField field : values()) {
+            if (field.name().equalsIgnoreCase(name)) {
+                return field;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,104 @@
+package nge.lk.mods.simpletabs.core.filter;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Assigns the IDs of filter nodes, reusing the IDs of collected nodes.
+ *
+ * The memoization arrays of {@link FilterContext} are indexed by node ID, so the IDs have to stay as dense as the
+ * live nodes, although filters are compiled again whenever a tab is edited.
+ */
+final class NodeIds {
+
+    /**
+     * Receives the references of collected nodes.
+     */
+    private static final ReferenceQueue<FilterNode> COLLECTED = new ReferenceQueue<>();
+
+    /**
+     * The references of all live nodes, which are only enqueued while they are reachable.
+     */
+    private static final Set<NodeReference> REFERENCES = new HashSet<>();
+
+    /**
+     * The IDs which are free for reuse.
+     */
+    private static final BitSet FREE = new BitSet();
+
+    /**
+     * The lowest ID which was never assigned.
+     */
+    private static int nextId;
+
+    /**
+     * Incremented whenever an ID is reused.
+     */
+    private static volatile int generation;
+
+    /**
+     * Assigns the ID of a new node, preferring the lowest free ID.
+     *
+     * @param node The node.
+     * @return The ID.
+     */
+    static synchronized int acquire(final FilterNode node) {
+        for (Reference<? extends FilterNode> collected = COLLECTED.poll(); collected != null;
+             collected = COLLECTED.poll()) {
+            REFERENCES.remove(collected);
+            FREE.set(((NodeReference) collected).id);
+        }
+
+        int id = FREE.nextSetBit(0);
+        if (id < 0) {
+            id = nextId++;
+        } else {
+            FREE.clear(id);
+            generation++;
+        }
+        REFERENCES.add(new NodeReference(node, id));
+        return id;
+    }
+
+    /**
+     * Returns the generation of the IDs. Results which were memoized for a node ID in an older generation may belong to
+     * a collected node.
+     *
+     * @return The generation.
+     */
+    static int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Utility class.
+     */
+    private NodeIds() {
+    }
+
+    /**
+     * Frees the ID of a node once the node is collected.
+     */
+    private static final class NodeReference extends PhantomReference<FilterNode> {
+
+        /**
+         * The ID of the node.
+         */
+        private final int id;
+
+        /**
+         * Constructor.
+         *
+         * @param node The node.
+         * @param id   The ID of the node.
+         */
+        private NodeReference(final FilterNode node, final int id) {
+            super(node, COLLECTED);
+            this.id = id;
+        }
+    }
+}
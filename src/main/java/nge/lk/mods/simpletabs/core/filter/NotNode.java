@@ -0,0 +1,38 @@
+package nge.lk.mods.simpletabs.core.filter;
+
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Matches if its operand does not match.
+ */
+@RequiredArgsConstructor
+@EqualsAndHashCode(callSuper = false)
+public class NotNode extends FilterNode {
+
+    /**
+     * The negated operand.
+     */
+    private final FilterNode operand;
+
+    @Override
+    protected boolean test(final FilterContext context) {
+        return !operand.evaluate(context);
+    }
+
+    @Override
+    public Boolean evaluateCheaply(final FilterContext context) {
+        final Boolean result = operand.evaluateCheaply(context);
+        return result == null ? null : !result;
+    }
+
+    @Override
+    protected double estimateCost() {
+        return operand.getCost();
+    }
+
+    @Override
+    protected void precompile() {
+        operand.precompile();
+    }
+}
@@ -0,0 +1,117 @@
+package nge.lk.mods.simpletabs.core.filter;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+import javax.annotation.Nullable;
+import java.util.function.Supplier;
+
+/**
+ * A received message together with its channel, sender and body.
+ *
+ * The fields are extracted on first access, so messages which are only matched against the whole text never pay for
+ * the extraction. Likewise, the sender hint is only looked up when the sender is accessed.
+ */
+@EqualsAndHashCode(of = {"text", "channelHint", "hintSource"})
+public final class ParsedMessage {
+
+    /**
+     * Marks a sender hint which was looked up and not found.
+     */
+    private static final Object NO_SENDER = new Object();
+
+    /**
+     * The message, without formatting codes.
+     */
+    @Getter private final String text;
+
+    /**
+     * The channel as found in the message's components, or {@code null}.
+     */
+    private final String channelHint;
+
+    /**
+     * Looks up the sender in the message's components, returning {@code null} if they don't identify the sender.
+     */
+    private final Supplier<String> senderLookup;
+
+    /**
+     * What the hints are found in, such as the message's components. Messages with equal texts, channel hints and hint
+     * sources have equal fields.
+     */
+    private final Object hintSource;
+
+    /**
+     * Extracts the fields from the text.
+     */
+    private final FieldExtractor extractor;
+
+    /**
+     * The extracted fields indexed by the field's ordinal, or {@code null} if they were not extracted yet.
+     */
+    private volatile String[] fields;
+
+    /**
+     * The sender hint, {@link #NO_SENDER} if there is none, or {@code null} if it was not looked up yet.
+     */
+    private volatile Object senderHint;
+
+    /**
+     * Constructor.
+     *
+     * @param text         The message, without formatting codes.
+     * @param channelHint  The channel as found in the message's components, or {@code null}.
+     * @param senderLookup Looks up the sender in the message's components on first access to the sender.
+     * @param hintSource   What the hints are found in, which determines the hints.
+     * @param extractor    Extracts the fields from the text.
+     */
+    public ParsedMessage(final String text, @Nullable final String channelHint, final Supplier<String> senderLookup,
+                         @Nullable final Object hintSource, final FieldExtractor extractor) {
+        this.text = text;
+        this.channelHint = channelHint;
+        this.senderLookup = senderLookup;
+        this.hintSource = hintSource;
+        this.extractor = extractor;
+    }
+
+    /**
+     * Returns a field of the message.
+     *
+     * @param field The field.
+     * @return The value of the field, or {@code null} if the message does not have that field.
+     */
+    public String getField(final MessageField field) {
+        if (field == MessageField.TEXT) {
+            return text;
+        }
+        if (field == MessageField.SENDER) {
+            final String sender = getSenderHint();
+            if (sender != null) {
+                return sender;
+            }
+        }
+        String[] extracted = fields;
+        if (extracted == null) {
+            // Extraction is idempotent, so concurrent extraction by several threads is harmless.
+            extracted = extractor.extractFields(text, channelHint);
+            fields = extracted;
+        }
+        return extracted[field.ordinal()];
+    }
+
+    /**
+     * Returns the sender hint, looking it up on first access.
+     *
+     * @return The sender as found in the message's components, or {@code null}.
+     */
+    private String getSenderHint() {
+        Object sender = senderHint;
+        if (sender == null) {
+            // The lookup is idempotent as well.
+            final String found = senderLookup.get();
+            sender = found == null ? NO_SENDER : found;
+            senderHint = sender;
+        }
+        return sender == NO_SENDER ? null : (String) sender;
+    }
+}
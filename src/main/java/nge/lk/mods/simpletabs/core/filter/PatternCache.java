@@ -0,0 +1,44 @@
+package nge.lk.mods.simpletabs.core.filter;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import java.util.regex.Pattern;
+
+/**
+ * A cache of compiled regular expressions, so identical patterns of different tabs or groups are compiled once.
+ *
+ * Patterns are held weakly, so they are dropped together with the last filter node using them.
+ */
+public final class PatternCache {
+
+    /**
+     * The compiled patterns in a {@code Regex -> Pattern} mapping.
+     */
+    private static final LoadingCache<String, Pattern> PATTERNS = CacheBuilder.newBuilder().weakValues()
+            .build(CacheLoader.from(Pattern::compile));
+
+    /**
+     * Returns the compiled pattern of a regular expression, compiling it if needed.
+     *
+     * @param regex The regular expression.
+     * @return The compiled pattern.
+     * @throws java.util.regex.PatternSyntaxException If the regular expression is not valid.
+     */
+    public static Pattern get(final String regex) {
+        try {
+            return PATTERNS.getUnchecked(regex);
+        } catch (final UncheckedExecutionException e) {
+            // Compiling only throws unchecked exceptions, such as the PatternSyntaxException of an invalid regex.
+            throw (RuntimeException) e.getCause();
+        }
+    }
+
+    /**
+     * Utility class.
+     */
+    private PatternCache() {
+    }
+}
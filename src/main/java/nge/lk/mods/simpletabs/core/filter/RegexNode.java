@@ -0,0 +1,114 @@
+package nge.lk.mods.simpletabs.core.filter;
+
+import lombok.EqualsAndHashCode;
+import nge.lk.mods.commonlib.util.DebugUtil;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Matches if a regular expression is found in a field.
+ *
+ * Simple regular expressions are matched by a {@link SimpleRegex} specialized to them. Other regular expressions are
+ * compiled on first use, or earlier by {@link FilterPlan#precompileNow}.
+ */
+@EqualsAndHashCode(callSuper = false, of = {"field", "regex"})
+public class RegexNode extends FilterNode {
+
+    /**
+     * Replaces regular expressions which can't be compiled. It never matches.
+     */
+    private static final Pattern NO_MATCH = Pattern.compile("(?!)");
+
+    /**
+     * The inspected field.
+     */
+    private final MessageField field;
+
+    /**
+     * The regular expression.
+     */
+    private final String regex;
+
+    /**
+     * The specialized matcher, or {@code null} if the regular expression is not simple.
+     */
+    private final SimpleRegex simple;
+
+    /**
+     * The matcher of each thread. Matchers are not thread-safe.
+     */
+    private final ThreadLocal<Matcher> matcher = ThreadLocal.withInitial(() -> getPattern().matcher(""));
+
+    /**
+     * The compiled regular expression, or {@code null} if it was not compiled yet.
+     */
+    private volatile Pattern pattern;
+
+    /**
+     * Constructor.
+     *
+     * @param field The inspected field.
+     * @param regex The regular expression.
+     */
+    public RegexNode(final MessageField field, final String regex) {
+        this.field = field;
+        this.regex = regex;
+        simple = SimpleRegex.compile(regex);
+    }
+
+    @Override
+    protected boolean test(final FilterContext context) {
+        final String value = context.getField(field);
+        if (value == null) {
+            return false;
+        }
+        if (simple != null && simple.handles(value)) {
+            return simple.find(value);
+        }
+        final Matcher fieldMatcher = matcher.get();
+        fieldMatcher.reset(value);
+        return fieldMatcher.find();
+    }
+
+    @Override
+    public Boolean evaluateCheaply(final FilterContext context) {
+        final String value = context.getField(field);
+        if (value == null) {
+            return false;
+        }
+        return simple != null && simple.handles(value) ? simple.find(value) : null;
+    }
+
+    @Override
+    protected double estimateCost() {
+        // A specialized matcher scans the field once, like a substring search.
+        return simple != null ? 30.0 : 200.0;
+    }
+
+    @Override
+    protected void precompile() {
+        getPattern();
+    }
+
+    /**
+     * Returns the compiled regular expression, compiling it if needed.
+     *
+     * @return The compiled regular expression.
+     */
+    private Pattern getPattern() {
+        Pattern compiled = pattern;
+        if (compiled == null) {
+            try {
+                compiled = PatternCache.get(regex);
+            } catch (final PatternSyntaxException e) {
+                // Only possible for hand-edited configurations, as the editor validates all patterns.
+                DebugUtil.recoverableError(e);
+                compiled = NO_MATCH;
+            }
+            pattern = compiled;
+        }
+        return compiled;
+    }
+}
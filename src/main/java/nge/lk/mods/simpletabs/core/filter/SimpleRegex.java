@@ -0,0 +1,736 @@
+package nge.lk.mods.simpletabs.core.filter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A specialized matcher for simple regular expressions, which finds matches without interpreting a pattern graph.
+ *
+ * Supported are alternatives of literals, character classes with ranges, negations and {@code \d \w \s}, the dot,
+ * the anchors {@code ^} and {@code $}, a leading {@code (?i)} flag and a group around the whole expression. Leading and
+ * trailing {@code .*} are dropped, as they don't change whether a match is found. Every element matches exactly one
+ * character, so matching is a plain scan. Alternatives made of literals only are found by {@link String#indexOf}.
+ *
+ * The matcher finds a match exactly when {@link java.util.regex.Matcher#find()} does, for texts it
+ * {@link #handles handles}.
+ */
+final class SimpleRegex {
+
+    /**
+     * The characters which end a line, which the dot and {@code $} treat specially.
+     */
+    private static final String LINE_TERMINATORS = "\n\r\u0085\u2028\u2029";
+
+    /**
+     * The ranges of {@code \d}, as pairs of the first and last character.
+     */
+    private static final char[] DIGIT = {'0', '9'};
+
+    /**
+     * The ranges of {@code \w}.
+     */
+    private static final char[] WORD = {'0', '9', 'A', 'Z', '_', '_', 'a', 'z'};
+
+    /**
+     * The ranges of {@code \s}.
+     */
+    private static final char[] SPACE = {'\t', '\r', ' ', ' '};
+
+    /**
+     * The alternatives, any of which has to match.
+     */
+    private final Alternative[] alternatives;
+
+    /**
+     * Whether an element may match part of a surrogate pair, where a regular expression would match the whole code
+     * point instead.
+     */
+    private final boolean surrogateSensitive;
+
+    /**
+     * Compiles a regular expression into a specialized matcher, if it is simple enough.
+     *
+     * @param regex The regular expression.
+     * @return The matcher, or {@code null} if the expression is not supported.
+     */
+    static SimpleRegex compile(final String regex) {
+        try {
+            return new Parser(regex).parse();
+        } catch (final UnsupportedException ignored) {
+            return null;
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param alternatives       The alternatives.
+     * @param surrogateSensitive Whether an element may match part of a surrogate pair.
+     */
+    private SimpleRegex(final Alternative[] alternatives, final boolean surrogateSensitive) {
+        this.alternatives = alternatives;
+        this.surrogateSensitive = surrogateSensitive;
+    }
+
+    /**
+     * Checks whether this matcher can decide on a text. Texts with characters outside the basic multilingual plane
+     * have to be matched by the regular expression if an element could match half of such a character.
+     *
+     * @param text The text.
+     * @return Whether {@link #find} may be used for the text.
+     */
+    boolean handles(final String text) {
+        if (surrogateSensitive) {
+            for (int i = 0; i < text.length(); i++) {
+                if (Character.isSurrogate(text.charAt(i))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the regular expression matches anywhere in a text.
+     *
+     * @param text The text, which this matcher {@link #handles handles}.
+     * @return Whether there is a match.
+     */
+    boolean find(final String text) {
+        for (final Alternative alternative : alternatives) {
+            if (alternative.find(text)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether {@code $} matches at a position, i.e. at the end of the text or before a final line terminator.
+     *
+     * @param text  The text.
+     * @param index The position.
+     * @return Whether the position is an end position.
+     */
+    private static boolean isEnd(final String text, final int index) {
+        final int length = text.length();
+        if (index == length) {
+            return true;
+        }
+        if (index == length - 2) {
+            return text.charAt(index) == '\r' && text.charAt(index + 1) == '\n';
+        }
+        if (index == length - 1) {
+            final char c = text.charAt(index);
+            if (c == '\n') {
+                // Not between the characters of a \r\n terminator.
+                return index == 0 || text.charAt(index - 1) != '\r';
+            }
+            return LINE_TERMINATORS.indexOf(c) >= 0;
+        }
+        return false;
+    }
+
+    /**
+     * Converts an ASCII letter to lower case, leaving all other characters unchanged.
+     *
+     * @param c The character.
+     * @return The converted character.
+     */
+    private static char toLowerAscii(final char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    /**
+     * Converts an ASCII letter to upper case, leaving all other characters unchanged.
+     *
+     * @param c The character.
+     * @return The converted character.
+     */
+    private static char toUpperAscii(final char c) {
+        return c >= 'a' && c <= 'z' ? (char) (c - ('a' - 'A')) : c;
+    }
+
+    /**
+     * One alternative: a sequence of elements, optionally anchored at the start or end.
+     */
+    private static final class Alternative {
+
+        /**
+         * The elements, each matching one character.
+         */
+        private final Element[] elements;
+
+        /**
+         * The text all elements match exactly, or {@code null} if some element matches several characters.
+         */
+        private final String literal;
+
+        /**
+         * Whether the alternative only matches at the start of the text.
+         */
+        private final boolean anchoredStart;
+
+        /**
+         * Whether the alternative only matches at the end of the text.
+         */
+        private final boolean anchoredEnd;
+
+        /**
+         * Constructor.
+         *
+         * @param elements      The elements.
+         * @param anchoredStart Whether the alternative only matches at the start.
+         * @param anchoredEnd   Whether the alternative only matches at the end.
+         */
+        private Alternative(final List<Element> elements, final boolean anchoredStart, final boolean anchoredEnd) {
+            this.elements = elements.toArray(new Element[0]);
+            this.anchoredStart = anchoredStart;
+            this.anchoredEnd = anchoredEnd;
+            literal = toLiteral(elements);
+        }
+
+        /**
+         * Returns the text a sequence of elements matches, if all elements match exactly one character.
+         *
+         * @param elements The elements.
+         * @return The text, or {@code null} if some element matches several characters.
+         */
+        private static String toLiteral(final List<Element> elements) {
+            final StringBuilder literal = new StringBuilder(elements.size());
+            for (final Element element : elements) {
+                if (!(element instanceof Exact)) {
+                    return null;
+                }
+                literal.append(((Exact) element).c);
+            }
+            return literal.toString();
+        }
+
+        /**
+         * Checks whether the alternative matches anywhere in a text.
+         *
+         * @param text The text.
+         * @return Whether there is a match.
+         */
+        private boolean find(final String text) {
+            final int length = elements.length;
+            if (anchoredStart) {
+                return matchesAt(text, 0) && (!anchoredEnd || isEnd(text, length));
+            }
+            if (anchoredEnd) {
+                // There are at most three end positions.
+                for (int end = text.length(); end >= Math.max(length, text.length() - 2); end--) {
+                    if (isEnd(text, end) && matchesAt(text, end - length)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            if (literal != null) {
+                return text.contains(literal);
+            }
+            for (int start = 0; start <= text.length() - length; start++) {
+                if (matchesAt(text, start)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Checks whether the elements match the text at a position.
+         *
+         * @param text  The text.
+         * @param start The position of the first element.
+         * @return Whether all elements match.
+         */
+        private boolean matchesAt(final String text, final int start) {
+            if (literal != null) {
+                return text.startsWith(literal, start);
+            }
+            if (start + elements.length > text.length()) {
+                return false;
+            }
+            for (int i = 0; i < elements.length; i++) {
+                if (!elements[i].matches(text.charAt(start + i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * An element matching one character.
+     */
+    private abstract static class Element {
+
+        /**
+         * Checks whether the element matches a character.
+         *
+         * @param c The character.
+         * @return Whether it matches.
+         */
+        abstract boolean matches(char c);
+    }
+
+    /**
+     * Matches one character exactly.
+     */
+    private static final class Exact extends Element {
+
+        /**
+         * The character.
+         */
+        private final char c;
+
+        /**
+         * Constructor.
+         *
+         * @param c The character.
+         */
+        private Exact(final char c) {
+            this.c = c;
+        }
+
+        @Override
+        boolean matches(final char other) {
+            return other == c;
+        }
+    }
+
+    /**
+     * Matches an ASCII letter in either case.
+     */
+    private static final class Caseless extends Element {
+
+        /**
+         * The lower case letter.
+         */
+        private final char lower;
+
+        /**
+         * The upper case letter.
+         */
+        private final char upper;
+
+        /**
+         * Constructor.
+         *
+         * @param letter The letter in any case.
+         */
+        private Caseless(final char letter) {
+            lower = toLowerAscii(letter);
+            upper = toUpperAscii(letter);
+        }
+
+        @Override
+        boolean matches(final char other) {
+            return other == lower || other == upper;
+        }
+    }
+
+    /**
+     * Matches any character except line terminators, like the dot.
+     */
+    private static final class AnyCharacter extends Element {
+
+        @Override
+        boolean matches(final char c) {
+            return LINE_TERMINATORS.indexOf(c) < 0;
+        }
+    }
+
+    /**
+     * Matches the characters in some ranges, or all others.
+     */
+    private static final class Ranges extends Element {
+
+        /**
+         * The ranges as pairs of the first and last character.
+         */
+        private final char[] ranges;
+
+        /**
+         * Whether the characters outside the ranges match.
+         */
+        private final boolean negated;
+
+        /**
+         * Whether ASCII letters match in either case.
+         */
+        private final boolean caseless;
+
+        /**
+         * Constructor.
+         *
+         * @param ranges   The ranges as pairs of the first and last character.
+         * @param negated  Whether the characters outside the ranges match.
+         * @param caseless Whether ASCII letters match in either case.
+         */
+        private Ranges(final char[] ranges, final boolean negated, final boolean caseless) {
+            this.ranges = ranges;
+            this.negated = negated;
+            this.caseless = caseless;
+        }
+
+        @Override
+        boolean matches(final char c) {
+            boolean inside = contains(c);
+            if (!inside && caseless) {
+                inside = contains(toLowerAscii(c)) || contains(toUpperAscii(c));
+            }
+            return inside != negated;
+        }
+
+        /**
+         * Checks whether a character is in one of the ranges.
+         *
+         * @param c The character.
+         * @return Whether the character is inside.
+         */
+        private boolean contains(final char c) {
+            for (int i = 0; i < ranges.length; i += 2) {
+                if (c >= ranges[i] && c <= ranges[i + 1]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Parses the supported subset of regular expressions.
+     */
+    private static final class Parser {
+
+        /**
+         * The expression without the flags and the enclosing group.
+         */
+        private final String body;
+
+        /**
+         * Whether ASCII letters match in either case.
+         */
+        private final boolean caseless;
+
+        /**
+         * The position of the next character.
+         */
+        private int pos;
+
+        /**
+         * Whether an element may match part of a surrogate pair.
+         */
+        private boolean surrogateSensitive;
+
+        /**
+         * Constructor.
+         *
+         * @param regex The regular expression.
+         */
+        private Parser(final String regex) {
+            String expression = regex;
+            caseless = expression.startsWith("(?i)");
+            if (caseless) {
+                expression = expression.substring(4);
+            }
+
+            // A group around the whole expression, if there are no other groups.
+            if (expression.startsWith("(") && expression.endsWith(")")) {
+                final String inner = expression.substring(expression.startsWith("(?:") ? 3 : 1,
+                        expression.length() - 1);
+                if (inner.indexOf('(') < 0 && inner.indexOf(')') < 0) {
+                    expression = inner;
+                }
+            }
+            body = expression;
+        }
+
+        /**
+         * Parses the expression.
+         *
+         * @return The matcher.
+         * @throws UnsupportedException If the expression is not supported.
+         */
+        private SimpleRegex parse() throws UnsupportedException {
+            final List<Alternative> alternatives = new ArrayList<>();
+            alternatives.add(parseAlternative());
+            while (pos < body.length()) {
+                // Alternatives only end at a bar or the end.
+                pos++;
+                alternatives.add(parseAlternative());
+            }
+            return new SimpleRegex(alternatives.toArray(new Alternative[0]), surrogateSensitive);
+        }
+
+        /**
+         * Parses an alternative, up to the next top-level bar or the end.
+         *
+         * @return The alternative.
+         * @throws UnsupportedException If the alternative is not supported.
+         */
+        private Alternative parseAlternative() throws UnsupportedException {
+            final boolean anchoredStart = pos < body.length() && body.charAt(pos) == '^';
+            if (anchoredStart) {
+                pos++;
+            }
+
+            final List<Element> elements = new ArrayList<>();
+            boolean anchoredEnd = false;
+            while (pos < body.length() && body.charAt(pos) != '|') {
+                if (body.charAt(pos) == '$') {
+                    pos++;
+                    if (!isAlternativeEnd(pos)) {
+                        throw new UnsupportedException();
+                    }
+                    anchoredEnd = true;
+                } else if (body.startsWith(".*", pos)
+                        && (elements.isEmpty() && !anchoredStart || isAlternativeEnd(pos + 2))) {
+                    // Matches the empty string, so it does not change whether an unanchored match is found.
+                    pos += 2;
+                } else {
+                    elements.add(parseElement());
+                    if (pos < body.length() && "*+?{".indexOf(body.charAt(pos)) >= 0) {
+                        throw new UnsupportedException();
+                    }
+                }
+            }
+            return new Alternative(elements, anchoredStart, anchoredEnd);
+        }
+
+        /**
+         * Checks whether an alternative ends at a position.
+         *
+         * @param index The position.
+         * @return Whether the position is the end of the expression or a bar.
+         */
+        private boolean isAlternativeEnd(final int index) {
+            return index == body.length() || body.charAt(index) == '|';
+        }
+
+        /**
+         * Parses an element outside of a character class.
+         *
+         * @return The element.
+         * @throws UnsupportedException If the element is not supported.
+         */
+        private Element parseElement() throws UnsupportedException {
+            final char c = body.charAt(pos++);
+            switch (c) {
+                case '.':
+                    surrogateSensitive = true;
+                    return new AnyCharacter();
+                case '[':
+                    return parseClass();
+                case '\\':
+                    final char[] predefined = parsePredefined();
+                    if (predefined != null) {
+                        return new Ranges(predefined, isNegatedPredefined(), false);
+                    }
+                    return literal(parseEscapedCharacter());
+                case '^':
+                case '$':
+                case '(':
+                case ')':
+                case '*':
+                case '+':
+                case '?':
+                case '{':
+                case '}':
+                case ']':
+                    throw new UnsupportedException();
+                default:
+                    return literal(c);
+            }
+        }
+
+        /**
+         * Creates the element matching a literal character.
+         *
+         * @param c The character.
+         * @return The element.
+         * @throws UnsupportedException If the character is part of a surrogate pair.
+         */
+        private Element literal(final char c) throws UnsupportedException {
+            if (Character.isSurrogate(c)) {
+                throw new UnsupportedException();
+            }
+            if (caseless && toLowerAscii(c) != toUpperAscii(c)) {
+                return new Caseless(c);
+            }
+            return new Exact(c);
+        }
+
+        /**
+         * Parses a character class after its opening bracket.
+         *
+         * @return The element.
+         * @throws UnsupportedException If the class is not supported, e.g. because it is nested or an intersection.
+         */
+        private Element parseClass() throws UnsupportedException {
+            final boolean negated = pos < body.length() && body.charAt(pos) == '^';
+            if (negated) {
+                pos++;
+            }
+
+            final StringBuilder ranges = new StringBuilder();
+            final int first = pos;
+            while (true) {
+                if (pos >= body.length()) {
+                    throw new UnsupportedException();
+                }
+                final char c = body.charAt(pos++);
+                if (c == ']' && pos - 1 > first) {
+                    break;
+                }
+                if (c == '[' || c == ']' || c == '&' && pos < body.length() && body.charAt(pos) == '&') {
+                    throw new UnsupportedException();
+                }
+
+                final char low;
+                if (c == '\\') {
+                    final char[] predefined = parsePredefined();
+                    if (predefined != null) {
+                        if (isNegatedPredefined()) {
+                            throw new UnsupportedException();
+                        }
+                        ranges.append(predefined);
+                        continue;
+                    }
+                    low = parseEscapedCharacter();
+                } else if (c == '-' && pos - 1 != first && pos < body.length() && body.charAt(pos) != ']') {
+                    // A dash which is neither first nor last.
+                    throw new UnsupportedException();
+                } else {
+                    low = c;
+                }
+
+                char high = low;
+                if (pos + 1 < body.length() && body.charAt(pos) == '-' && body.charAt(pos + 1) != ']') {
+                    pos++;
+                    final char end = body.charAt(pos++);
+                    if (end == '\\') {
+                        if (parsePredefined() != null) {
+                            throw new UnsupportedException();
+                        }
+                        high = parseEscapedCharacter();
+                    } else if (end == '[' || end == '&') {
+                        throw new UnsupportedException();
+                    } else {
+                        high = end;
+                    }
+                    if (high < low) {
+                        throw new UnsupportedException();
+                    }
+                }
+                if (Character.isSurrogate(low) || Character.isSurrogate(high)) {
+                    throw new UnsupportedException();
+                }
+                if (low <= Character.MAX_SURROGATE && high >= Character.MIN_SURROGATE) {
+                    // The range spans all surrogates, which would match the halves of a pair instead of its code point.
+                    surrogateSensitive = true;
+                }
+                ranges.append(low).append(high);
+            }
+
+            if (negated) {
+                surrogateSensitive = true;
+            }
+            final char[] pairs = new char[ranges.length()];
+            ranges.getChars(0, pairs.length, pairs, 0);
+            return new Ranges(pairs, negated, caseless);
+        }
+
+        /**
+         * Parses a predefined class after a backslash, leaving the position unchanged if there is none.
+         *
+         * @return The ranges of the class, or {@code null} if the escape is no predefined class.
+         */
+        private char[] parsePredefined() {
+            if (pos >= body.length()) {
+                return null;
+            }
+            final char[] ranges;
+            switch (Character.toLowerCase(body.charAt(pos))) {
+                case 'd':
+                    ranges = DIGIT;
+                    break;
+                case 'w':
+                    ranges = WORD;
+                    break;
+                case 's':
+                    ranges = SPACE;
+                    break;
+                default:
+                    return null;
+            }
+            pos++;
+            return ranges;
+        }
+
+        /**
+         * Checks whether the predefined class which was just parsed is negated, like {@code \D}.
+         *
+         * @return Whether the class is negated.
+         */
+        private boolean isNegatedPredefined() {
+            final boolean negated = Character.isUpperCase(body.charAt(pos - 1));
+            if (negated) {
+                surrogateSensitive = true;
+            }
+            return negated;
+        }
+
+        /**
+         * Parses an escaped character after a backslash.
+         *
+         * @return The character.
+         * @throws UnsupportedException If the escape does not stand for a single supported character.
+         */
+        private char parseEscapedCharacter() throws UnsupportedException {
+            if (pos >= body.length()) {
+                throw new UnsupportedException();
+            }
+            final char c = body.charAt(pos++);
+            switch (c) {
+                case 't':
+                    return '\t';
+                case 'n':
+                    return '\n';
+                case 'r':
+                    return '\r';
+                case 'f':
+                    return '\f';
+                case 'a':
+                    return '\u0007';
+                case 'e':
+                    return '\u001B';
+                default:
+                    if (c < 128 && !Character.isLetterOrDigit(c)) {
+                        return c;
+                    }
+                    throw new UnsupportedException();
+            }
+        }
+    }
+
+    /**
+     * Signals that an expression is not supported, so the regular expression engine has to be used.
+     */
+    private static final class UnsupportedException extends Exception {
+
+        /**
+         * The serialization version.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Constructor.
+         */
+        private UnsupportedException() {
+            super(null, null, false, false);
+        }
+    }
+}
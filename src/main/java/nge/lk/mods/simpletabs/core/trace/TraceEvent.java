@@ -0,0 +1,108 @@
+package nge.lk.mods.simpletabs.core.trace;
+
+import lombok.Getter;
+
+/**
+ * The flight recorder events emitted by SimpleTabs.
+ */
+public enum TraceEvent {
+
+    /**
+     * Parsing a received message and routing it to the accepting tabs.
+     */
+    ROUTE("Route", "Message Routing", new String[]{"length", "acceptingTabs"}, new Class<?>[]{int.class, int.class}),
+
+    /**
+     * Matching a message against the filter of one tab.
+     */
+    MATCH("Match", "Tab Filter Match", new String[]{"tab", "accepted"}, new Class<?>[]{String.class, boolean.class}),
+
+    /**
+     * Wrapping a message into the lines of a tab.
+     */
+    WRAP("Wrap", "Line Wrapping", new String[]{"width", "lines"}, new Class<?>[]{int.class, int.class}),
+
+    /**
+     * Saving the tab configurations.
+     */
+    SAVE("Save", "Tab Saving", new String[]{"file"}, new Class<?>[]{String.class}),
+
+    /**
+     * Loading the tab configurations.
+     */
+    LOAD("Load", "Tab Loading", new String[]{"file", "groups"}, new Class<?>[]{String.class, int.class}),
+
+    /**
+     * Drawing the chat and the tab bar.
+     */
+    DRAW("DrawChat", "Chat Drawing", new String[]{"chatOpen"}, new Class<?>[]{boolean.class});
+
+    /**
+     * The prefix of all event names.
+     */
+    private static final String NAME_PREFIX = "nge.lk.simpletabs.";
+
+    /**
+     * The unique name of the event.
+     */
+    @Getter private final String eventName;
+
+    /**
+     * The human readable name of the event.
+     */
+    @Getter private final String label;
+
+    /**
+     * The names of the event's fields, in the order the values are committed in.
+     */
+    private final String[] fieldNames;
+
+    /**
+     * The types of the event's fields.
+     */
+    private final Class<?>[] fieldTypes;
+
+    /**
+     * Constructor.
+     *
+     * @param name       The name of the event, without the common prefix.
+     * @param label      The human readable name of the event.
+     * @param fieldNames The names of the event's fields.
+     * @param fieldTypes The types of the event's fields.
+     */
+    TraceEvent(final String name, final String label, final String[] fieldNames, final Class<?>[] fieldTypes) {
+        eventName = NAME_PREFIX + name;
+        this.label = label;
+        this.fieldNames = fieldNames;
+        this.fieldTypes = fieldTypes;
+    }
+
+    /**
+     * Returns the number of fields of the event.
+     *
+     * @return The number of fields.
+     */
+    public int getFieldCount() {
+        return fieldNames.length;
+    }
+
+    /**
+     * Returns the name of a field.
+     *
+     * @param index The index of the field.
+     * @return The name.
+     */
+    public String getFieldName(final int index) {
+        return fieldNames[index];
+    }
+
+    /**
+     * Returns the type of a field.
+     *
+     * @param index The index of the field.
+     * @return The type, a primitive type or {@link String}.
+     */
+    public Class<?> getFieldType(final int index) {
+        return fieldTypes[index];
+    }
+}
@@ -0,0 +1,209 @@
+package nge.lk.mods.simpletabs.core.trace;
+
+import nge.lk.mods.commonlib.util.DebugUtil;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Emits {@link TraceEvent}s to the Java Flight Recorder.
+ *
+ * The flight recorder API is only available on some Java 8 runtimes, so it is bound reflectively through
+ * {@code jdk.jfr.EventFactory}. Callers trace a section like this:
+ * <pre>
+ * final Object trace = Tracer.begin(TraceEvent.WRAP);
+ * // ... the traced section ...
+ * if (trace != null) {
+ *     Tracer.commit(trace, width, lines);
+ * }
+ * </pre>
+ * If there is no flight recorder, or no recording enables the event, {@link #begin} returns {@code null} without
+ * allocating anything, and the guard skips boxing the values.
+ */
+public final class Tracer {
+
+    /**
+     * The tracer bound to the flight recorder, or {@code null} if the runtime has none.
+     */
+    private static final Tracer INSTANCE = bind();
+
+    /**
+     * The event factory of each event type, indexed by ordinal.
+     */
+    private final Object[] factories;
+
+    /**
+     * Checks whether an event type is enabled in any recording, indexed by ordinal.
+     */
+    private final MethodHandle[] enabled;
+
+    /**
+     * Creates an event from a factory: {@code (Object)Object}.
+     */
+    private final MethodHandle newEvent;
+
+    /**
+     * Starts the timing of an event: {@code (Object)void}.
+     */
+    private final MethodHandle beginEvent;
+
+    /**
+     * Sets a field of an event: {@code (Object, int, Object)void}.
+     */
+    private final MethodHandle setField;
+
+    /**
+     * Ends the timing of an event: {@code (Object)void}.
+     */
+    private final MethodHandle endEvent;
+
+    /**
+     * Writes an event to the recordings: {@code (Object)void}.
+     */
+    private final MethodHandle commitEvent;
+
+    /**
+     * Starts tracing a section.
+     *
+     * @param type The type of the event.
+     * @return The started event, or {@code null} if the event is not recorded.
+     */
+    public static Object begin(final TraceEvent type) {
+        final Tracer tracer = INSTANCE;
+        return tracer == null ? null : tracer.start(type);
+    }
+
+    /**
+     * Finishes tracing a section and records the event.
+     *
+     * @param event  The event returned by {@link #begin}, not {@code null}.
+     * @param values The values of the event's fields, in the order of {@link TraceEvent}'s fields.
+     */
+    public static void commit(final Object event, final Object... values) {
+        INSTANCE.finish(event, values);
+    }
+
+    /**
+     * Binds the flight recorder API of the runtime.
+     *
+     * @return The tracer, or {@code null} if the runtime has no flight recorder.
+     */
+    private static Tracer bind() {
+        final Class<?> factoryClass;
+        try {
+            factoryClass = Class.forName("jdk.jfr.EventFactory");
+        } catch (final ClassNotFoundException | LinkageError e) {
+            return null;
+        }
+
+        try {
+            return new Tracer(factoryClass);
+        } catch (final ReflectiveOperationException | RuntimeException | LinkageError e) {
+            DebugUtil.recoverableError(e);
+            return null;
+        }
+    }
+
+    /**
+     * Loads a flight recorder annotation type.
+     *
+     * @param name The name of the annotation type.
+     * @return The annotation type.
+     * @throws ClassNotFoundException If the type does not exist.
+     */
+    private static Class<? extends Annotation> annotation(final String name) throws ClassNotFoundException {
+        return Class.forName(name).asSubclass(Annotation.class);
+    }
+
+    /**
+     * Constructor. Registers all event types.
+     *
+     * @param factoryClass The {@code jdk.jfr.EventFactory} class.
+     * @throws ReflectiveOperationException If the flight recorder API does not have the expected shape.
+     */
+    private Tracer(final Class<?> factoryClass) throws ReflectiveOperationException {
+        final Class<?> eventClass = Class.forName("jdk.jfr.Event");
+        final Class<?> eventTypeClass = Class.forName("jdk.jfr.EventType");
+        final Class<?> annotationClass = Class.forName("jdk.jfr.AnnotationElement");
+        final Class<?> descriptorClass = Class.forName("jdk.jfr.ValueDescriptor");
+        final Constructor<?> annotationConstructor = annotationClass.getConstructor(Class.class, Object.class);
+        final Constructor<?> descriptorConstructor = descriptorClass.getConstructor(Class.class, String.class);
+
+        final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        final MethodType voidType = MethodType.methodType(void.class, Object.class);
+        newEvent = lookup.findVirtual(factoryClass, "newEvent", MethodType.methodType(eventClass))
+                .asType(MethodType.methodType(Object.class, Object.class));
+        beginEvent = lookup.findVirtual(eventClass, "begin", MethodType.methodType(void.class)).asType(voidType);
+        endEvent = lookup.findVirtual(eventClass, "end", MethodType.methodType(void.class)).asType(voidType);
+        commitEvent = lookup.findVirtual(eventClass, "commit", MethodType.methodType(void.class)).asType(voidType);
+        setField = lookup.findVirtual(eventClass, "set", MethodType.methodType(void.class, int.class, Object.class))
+                .asType(MethodType.methodType(void.class, Object.class, int.class, Object.class));
+        final MethodHandle isEnabled = lookup.findVirtual(eventTypeClass, "isEnabled",
+                MethodType.methodType(boolean.class));
+
+        final TraceEvent[] types = TraceEvent.values();
+        factories = new Object[types.length];
+        enabled = new MethodHandle[types.length];
+        for (final TraceEvent type : types) {
+            final List<Object> annotations = new ArrayList<>();
+            annotations.add(annotationConstructor.newInstance(annotation("jdk.jfr.Name"), type.getEventName()));
+            annotations.add(annotationConstructor.newInstance(annotation("jdk.jfr.Label"), type.getLabel()));
+            annotations.add(annotationConstructor.newInstance(annotation("jdk.jfr.Category"),
+                    new String[]{"SimpleTabs"}));
+            annotations.add(annotationConstructor.newInstance(annotation("jdk.jfr.StackTrace"), false));
+
+            final List<Object> fields = new ArrayList<>();
+            for (int i = 0; i < type.getFieldCount(); i++) {
+                fields.add(descriptorConstructor.newInstance(type.getFieldType(i), type.getFieldName(i)));
+            }
+
+            final Object factory = factoryClass.getMethod("create", List.class, List.class)
+                    .invoke(null, annotations, fields);
+            factories[type.ordinal()] = factory;
+            enabled[type.ordinal()] = isEnabled.bindTo(factoryClass.getMethod("getEventType").invoke(factory));
+        }
+    }
+
+    /**
+     * Starts an event if it is recorded.
+     *
+     * @param type The type of the event.
+     * @return The started event, or {@code null} if the event is not recorded.
+     */
+    private Object start(final TraceEvent type) {
+        try {
+            if (!(boolean) enabled[type.ordinal()].invokeExact()) {
+                return null;
+            }
+            final Object event = (Object) newEvent.invokeExact(factories[type.ordinal()]);
+            beginEvent.invokeExact(event);
+            return event;
+        } catch (final Throwable t) {
+            DebugUtil.recoverableError(t);
+            return null;
+        }
+    }
+
+    /**
+     * Sets the fields of an event and records it.
+     *
+     * @param event  The event.
+     * @param values The values of the fields.
+     */
+    private void finish(final Object event, final Object[] values) {
+        try {
+            endEvent.invokeExact(event);
+            for (int i = 0; i < values.length; i++) {
+                setField.invokeExact(event, i, values[i]);
+            }
+            commitEvent.invokeExact(event);
+        } catch (final Throwable t) {
+            DebugUtil.recoverableError(t);
+        }
+    }
+}
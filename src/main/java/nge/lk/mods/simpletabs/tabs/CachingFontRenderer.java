@@ -0,0 +1,104 @@
+package nge.lk.mods.simpletabs.tabs;
+
+import net.minecraft.client.gui.FontRenderer;
+import net.minecraft.client.resources.IResource;
+import net.minecraft.client.resources.IResourceManager;
+import net.minecraft.client.resources.SimpleResource;
+import net.minecraft.client.settings.GameSettings;
+import net.minecraft.util.ResourceLocation;
+import nge.lk.mods.simpletabs.core.WidthCache;
+
+import java.io.ByteArrayInputStream;
+
+/**
+ * A font renderer for measuring text, which memoizes the widths measured by the game's font renderer.
+ *
+ * Shared by the line wrapping of all tabs and the tab bar layout. Only measuring is supported, drawing still has to use
+ * the game's font renderer. The renderer loads no textures or glyph sizes of its own, so it can be created without the
+ * game's resources.
+ */
+public class CachingFontRenderer extends FontRenderer {
+
+    /**
+     * The number of texts whose width is cached.
+     */
+    private static final int CACHE_SIZE = 4096;
+
+    /**
+     * The game's font renderer, which measures text which is not cached.
+     */
+    private final FontRenderer font;
+
+    /**
+     * The cached widths.
+     */
+    private final WidthCache widthCache;
+
+    /**
+     * The unicode flag of the game's font renderer when the cached widths were measured.
+     */
+    private boolean unicode;
+
+    /**
+     * Constructor. The renderer has to be registered for resource reloads.
+     *
+     * @param gameSettings The game settings.
+     * @param font         The game's font renderer, which measures text that is not cached.
+     */
+    public CachingFontRenderer(final GameSettings gameSettings, final FontRenderer font) {
+        super(gameSettings, new ResourceLocation("textures/font/ascii.png"), null, font.getUnicodeFlag());
+        this.font = font;
+        widthCache = new WidthCache(CACHE_SIZE, font::getStringWidth);
+        unicode = font.getUnicodeFlag();
+    }
+
+    @Override
+    public int getStringWidth(final String text) {
+        if (text == null) {
+            return 0;
+        }
+        if (font.getUnicodeFlag() != unicode) {
+            // The unicode font was toggled, which changes all glyph widths.
+            unicode = font.getUnicodeFlag();
+            widthCache.invalidate();
+        }
+        return widthCache.getWidth(text);
+    }
+
+    @Override
+    public int getCharWidth(final char character) {
+        return font.getCharWidth(character);
+    }
+
+    @Override
+    public String trimStringToWidth(final String text, final int width) {
+        return font.trimStringToWidth(text, width);
+    }
+
+    @Override
+    public String trimStringToWidth(final String text, final int width, final boolean reverse) {
+        return font.trimStringToWidth(text, width, reverse);
+    }
+
+    @Override
+    public boolean getUnicodeFlag() {
+        return font.getUnicodeFlag();
+    }
+
+    @Override
+    protected void bindTexture(final ResourceLocation location) {
+        // Nothing is drawn with this renderer.
+    }
+
+    @Override
+    protected IResource getResource(final ResourceLocation location) {
+        // The glyphs are measured by the game's font renderer.
+        return new SimpleResource("simpletabs", location, new ByteArrayInputStream(new byte[0]), null, null);
+    }
+
+    @Override
+    public void onResourceManagerReload(final IResourceManager resourceManager) {
+        // The glyph widths may have changed with the resource pack.
+        widthCache.invalidate();
+    }
+}
@@ -0,0 +1,126 @@
+package nge.lk.mods.simpletabs.tabs;
+
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.gui.FontRenderer;
+import net.minecraft.client.resources.IResourceManagerReloadListener;
+import net.minecraft.client.settings.GameSettings;
+import nge.lk.mods.simpletabs.core.TabBarLayout;
+
+/**
+ * The game as seen by the chat: its settings, the fonts, the mouse, sounds and drawing.
+ *
+ * The tabs are measured, drawn and notified only through the client, so the chat can run without a game window. The
+ * game's client is the {@link GameChatClient}.
+ */
+public interface ChatClient extends TabBarLayout.Canvas {
+
+    /**
+     * Returns the game, which the vanilla chat behavior that does not go through this client uses.
+     *
+     * @return The game, or {@code null} when running without a game.
+     */
+    Minecraft getMinecraft();
+
+    /**
+     * Returns the game settings, which contain the chat settings.
+     *
+     * @return The game settings.
+     */
+    GameSettings getGameSettings();
+
+    /**
+     * Returns the game's font renderer, which measures text that is not cached.
+     *
+     * @return The font renderer.
+     */
+    FontRenderer getFontRenderer();
+
+    /**
+     * Registers a listener which is called when the resources are reloaded, e.g. with another resource pack.
+     *
+     * @param listener The listener.
+     */
+    void addReloadListener(IResourceManagerReloadListener listener);
+
+    /**
+     * Returns the update counter of the chat, which is the time scale of received lines.
+     *
+     * @return The update counter.
+     */
+    int getUpdateCounter();
+
+    /**
+     * Checks whether the chat screen is open.
+     *
+     * @return Whether the chat is open.
+     */
+    boolean isChatOpen();
+
+    /**
+     * Returns the scale factor of the GUI.
+     *
+     * @return The number of window pixels per GUI pixel.
+     */
+    int getScaleFactor();
+
+    /**
+     * Returns the horizontal mouse position.
+     *
+     * @return The x coordinate in window pixels, from the left edge.
+     */
+    int getMouseX();
+
+    /**
+     * Returns the vertical mouse position.
+     *
+     * @return The y coordinate in window pixels, from the bottom edge.
+     */
+    int getMouseY();
+
+    /**
+     * Runs a task on the client thread, after the current tick.
+     *
+     * @param task The task.
+     */
+    void runOnClientThread(Runnable task);
+
+    /**
+     * Plays the notification sound of tabs.
+     */
+    void playNotification();
+
+    /**
+     * Saves the current transformation.
+     */
+    void pushMatrix();
+
+    /**
+     * Restores the last saved transformation.
+     */
+    void popMatrix();
+
+    /**
+     * Moves the origin.
+     *
+     * @param x The horizontal offset.
+     * @param y The vertical offset.
+     */
+    void translate(float x, float y);
+
+    /**
+     * Scales the coordinates.
+     *
+     * @param factor The scale factor of both axes.
+     */
+    void scale(float factor);
+
+    /**
+     * Draws a text with a shadow, blending its color with the background.
+     *
+     * @param text  The text, possibly with formatting codes.
+     * @param x     The left edge.
+     * @param y     The top edge.
+     * @param color The ARGB color.
+     */
+    void drawStringWithShadow(String text, float x, float y, int color);
+}
@@ -0,0 +1,77 @@
+package nge.lk.mods.simpletabs.tabs;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import net.minecraft.client.gui.ChatLine;
+import net.minecraft.util.text.ITextComponent;
+import nge.lk.mods.simpletabs.core.LineCodec;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Converts chat lines to and from bytes, storing the component as JSON.
+ *
+ * Shared lines keep their identity: as long as a shared line is held anywhere, reading it returns the same object, so
+ * a line which a tab decompresses is still shared with the other tabs. One codec is used for all tabs.
+ */
+class ChatLineCodec implements LineCodec<ChatLine> {
+
+    /**
+     * The serial number written for lines which are not shared.
+     */
+    static final long NOT_SHARED = 0;
+
+    /**
+     * The written or read shared lines in a {@code Serial -> Line} mapping, holding the lines weakly.
+     */
+    private final Cache<Long, SharedChatLine> sharedLines = CacheBuilder.newBuilder().weakValues().build();
+
+    @Override
+    public void write(final ChatLine line, final DataOutput out) throws IOException {
+        if (line instanceof SharedChatLine) {
+            final SharedChatLine sharedLine = (SharedChatLine) line;
+            sharedLines.put(sharedLine.getSerial(), sharedLine);
+            out.writeLong(sharedLine.getSerial());
+            out.writeLong(sharedLine.getSourceSerial());
+        } else {
+            out.writeLong(NOT_SHARED);
+        }
+        out.writeInt(line.getUpdatedCounter());
+        out.writeInt(line.getChatLineID());
+
+        // Components can exceed the length limit of writeUTF.
+        final byte[] json = ITextComponent.Serializer.componentToJson(line.getChatComponent())
+                .getBytes(StandardCharsets.UTF_8);
+        out.writeInt(json.length);
+        out.write(json);
+    }
+
+    @Override
+    public ChatLine read(final DataInput in) throws IOException {
+        final long serial = in.readLong();
+        final long sourceSerial = serial == NOT_SHARED ? NOT_SHARED : in.readLong();
+        final int updateCounter = in.readInt();
+        final int chatLineId = in.readInt();
+        final byte[] json = new byte[in.readInt()];
+        in.readFully(json);
+
+        if (serial != NOT_SHARED) {
+            final SharedChatLine sharedLine = sharedLines.getIfPresent(serial);
+            if (sharedLine != null) {
+                return sharedLine;
+            }
+        }
+        final ITextComponent component = ITextComponent.Serializer.jsonToComponent(
+                new String(json, StandardCharsets.UTF_8));
+        if (serial == NOT_SHARED) {
+            return new ChatLine(updateCounter, component, chatLineId);
+        }
+        final SharedChatLine sharedLine = new SharedChatLine(serial, sourceSerial, updateCounter, component,
+                chatLineId);
+        sharedLines.put(serial, sharedLine);
+        return sharedLine;
+    }
+}
@@ -1,34 +1,83 @@
 package nge.lk.mods.simpletabs.tabs;
 
 import lombok.Getter;
-import lombok.Setter;
-import net.minecraft.client.Minecraft;
 import net.minecraft.client.gui.ChatLine;
 import net.minecraft.client.gui.GuiNewChat;
-import net.minecraft.client.gui.GuiUtilRenderComponents;
-import net.minecraft.init.SoundEvents;
-import net.minecraft.util.SoundCategory;
+import net.minecraft.client.settings.GameSettings;
+import net.minecraft.entity.player.EntityPlayer.EnumChatVisibility;
 import net.minecraft.util.math.MathHelper;
 import net.minecraft.util.text.ITextComponent;
+import nge.lk.mods.simpletabs.core.Evictable;
+import nge.lk.mods.simpletabs.core.LineHistory;
+import nge.lk.mods.simpletabs.core.MemoryBudget;
+import nge.lk.mods.simpletabs.core.RoutedTab;
+import nge.lk.mods.simpletabs.core.TabSettings;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Represents a chat tab.
+ *
+ * The tab is measured and drawn through a {@link ChatClient}, like the vanilla chat is through the game.
  */
-public class ChatTab extends GuiNewChat {
+public class ChatTab extends GuiNewChat implements RoutedTab, Evictable {
 
     /**
-     * The magic value used to represent infinite history.
+     * The magic value used to represent that no line of a tab expires.
      */
-    private static final int HISTORY_INFINITE = -1;
+    public static final long NO_EXPIRY = -1;
 
     /**
-     * The filter which selects the messages to accept.
+     * The settings of this tab.
      */
-    private Matcher filter;
+    @Getter private final TabSettings settings;
+
+    /**
+     * The estimated size of a chat line without its component in bytes.
+     */
+    private static final int LINE_OVERHEAD = 24;
+
+    /**
+     * The estimated size of a text component without its text in bytes: the component, its style, its sibling list
+     * and the string header.
+     */
+    private static final int COMPONENT_OVERHEAD = 120;
+
+    /**
+     * The estimated size of a tab's reference to a shared line in bytes.
+     */
+    private static final int REFERENCE_OVERHEAD = 8;
+
+    /**
+     * The number of ticks after which lines are hidden while the chat is closed.
+     */
+    private static final int FADE_TICKS = 200;
+
+    /**
+     * The height of a chat line.
+     */
+    private static final int LINE_HEIGHT = 9;
+
+    /**
+     * The game as seen by the chat.
+     */
+    private final ChatClient client;
+
+    /**
+     * The wrapped lines which are drawn.
+     */
+    private final LineHistory<ChatLine> drawnHistory;
+
+    /**
+     * The received lines.
+     */
+    private final LineHistory<ChatLine> lineHistory;
+
+    /**
+     * Splits lines for wrapping, shared by all tabs.
+     */
+    private final LineWrapper wrapper;
 
     /**
      * Whether this tab has unread messages.
@@ -36,155 +85,393 @@ public class ChatTab extends GuiNewChat {
     @Getter private boolean unread;
 
     /**
-     * The pattern string, for saving.
+     * When this tab was viewed last, in the {@link System#nanoTime()} scale.
      */
-    @Getter private String pattern;
+    @Getter private long lastViewed;
 
     /**
-     * Whether the pattern is literal, for saving.
+     * Constructor.
+     *
+     * @param client   The game as seen by the chat.
+     * @param settings The settings of the tab.
+     * @param budget   The memory budget the history counts against.
+     * @param wrapper  Splits lines for wrapping, shared by all tabs.
+     * @param codec    Compresses old lines, shared by all tabs so that shared lines stay shared.
      */
-    @Getter private boolean literal;
+    ChatTab(final ChatClient client, final TabSettings settings, final MemoryBudget budget,
+            final LineWrapper wrapper, final ChatLineCodec codec) {
+        super(client.getMinecraft());
+        this.client = client;
+        this.settings = settings;
+        this.wrapper = wrapper;
+        drawnHistory = new LineHistory<>(ChatLine::getChatLineID, ChatTab::estimateBytes, budget, codec);
+        lineHistory = new LineHistory<>(ChatLine::getChatLineID, ChatTab::estimateBytes, budget, codec);
+
+        // Replace the vanilla lists with the history storage.
+        drawnChatLines = drawnHistory;
+        chatLines = lineHistory;
+    }
+
+    @Override
+    public void drawChat(final int updateCounter) {
+        final GameSettings gameSettings = client.getGameSettings();
+        if (gameSettings.chatVisibility == EnumChatVisibility.HIDDEN || drawnHistory.isEmpty()) {
+            return;
+        }
+
+        final boolean chatOpen = getChatOpen();
+        final float opacity = gameSettings.chatOpacity * 0.9f + 0.1f;
+        final float chatScale = getChatScale();
+        final int width = MathHelper.ceil((float) getChatWidth() / chatScale);
+        final int lineCount = getLineCount();
+        client.pushMatrix();
+        client.translate(2.0f, 8.0f);
+        client.scale(chatScale);
+
+        // Only the visible lines are looked at, so compressed lines are not decompressed.
+        int drawnLines = 0;
+        for (int i = 0; i + scrollPos < drawnHistory.size() && i < lineCount; i++) {
+            final ChatLine line = drawnHistory.get(i + scrollPos);
+            final int age = updateCounter - line.getUpdatedCounter();
+            if (age >= FADE_TICKS && !chatOpen) {
+                continue;
+            }
+
+            // Lines fade out during the last tenth of their display time.
+            double fade = MathHelper.clamp((1.0 - (double) age / FADE_TICKS) * 10.0, 0.0, 1.0);
+            fade *= fade;
+            final int alpha = (int) ((chatOpen ? 255 : (int) (255.0 * fade)) * opacity);
+            drawnLines++;
+            if (alpha > 3) {
+                final int bottom = -i * LINE_HEIGHT;
+                client.drawRect(-2, bottom - LINE_HEIGHT, width + 4, bottom, alpha / 2 << 24);
+                client.drawStringWithShadow(line.getChatComponent().getFormattedText(), 0.0f, bottom - 8,
+                        0xFFFFFF + (alpha << 24));
+            }
+        }
+
+        if (chatOpen) {
+            drawScrollBar(drawnLines);
+        }
+        client.popMatrix();
+    }
+
+    @Override
+    public boolean getChatOpen() {
+        return client.isChatOpen();
+    }
+
+    @Override
+    public int getChatWidth() {
+        return calculateChatboxWidth(client.getGameSettings().chatWidth);
+    }
+
+    @Override
+    public int getChatHeight() {
+        final GameSettings gameSettings = client.getGameSettings();
+        return calculateChatboxHeight(getChatOpen() ? gameSettings.chatHeightFocused
+                : gameSettings.chatHeightUnfocused);
+    }
+
+    @Override
+    public float getChatScale() {
+        return client.getGameSettings().chatScale;
+    }
+
+    @Override
+    public void printChatMessageWithOptionalDeletion(final ITextComponent chatComponent, final int chatLineId) {
+        super.printChatMessageWithOptionalDeletion(chatComponent, chatLineId);
+        notifyReceived();
+    }
 
     /**
-     * Whether this tab has a whitelist.
+     * Called when a chat message is received which is shared with the other accepting tabs. Any lines with the same
+     * line ID must have been deleted already.
+     *
+     * @param line The received line.
      */
-    @Getter private boolean whitelist;
+    void receive(final SharedChatLine line) {
+        addNewestWrapped(line);
+        lineHistory.addNewest(line);
+        lineHistory.trimTo(settings.getHistorySize());
+        notifyReceived();
+    }
+
+    @Override
+    protected void setChatLine(final ITextComponent chatComponent, final int chatLineId, final int updateCounter,
+                               final boolean displayOnly) {
+        if (chatLineId != 0) {
+            this.deleteChatLine(chatLineId);
+        }
+
+        // A shared line, even though only this tab holds it, so that its wrapped lines are known when it is evicted.
+        final ChatLine line = new SharedChatLine(updateCounter, chatComponent, chatLineId);
+        addNewestWrapped(line);
+        if (!displayOnly) {
+            lineHistory.addNewest(line);
+            lineHistory.trimTo(settings.getHistorySize());
+        }
+    }
+
+    @Override
+    public void refreshChat() {
+        // Re-wrap from the received lines, reusing the wrapped lines the other tabs share.
+        drawnHistory.clear();
+        resetScroll();
+        for (int i = lineHistory.size() - 1; i >= 0; i--) {
+            addNewestWrapped(lineHistory.get(i));
+        }
+    }
 
     /**
-     * Whether this tab will play sound notifications.
+     * Adds messages which are older than all lines of this tab, e.g. to fill the history of a new tab.
+     *
+     * @param lines The received lines of the messages, oldest first.
      */
-    @Getter private boolean notify;
+    public void appendOlder(final List<ChatLine> lines) {
+        final int maxLength = getWrapWidth();
+        final List<ChatLine> olderWrapped = new ArrayList<>(lines.size());
+        final List<ChatLine> older = new ArrayList<>(lines.size());
+        for (int i = lines.size() - 1; i >= 0; i--) {
+            final ChatLine line = lines.get(i);
+            final List<ChatLine> wrappedLines = wrap(line, maxLength);
+
+            // The last wrapped line is the newest, like in addNewestWrapped.
+            for (int j = wrappedLines.size() - 1; j >= 0; j--) {
+                olderWrapped.add(wrappedLines.get(j));
+            }
+            older.add(line);
+        }
+
+        // Adding in bulk compresses the lines which go past the compressed lines right away.
+        drawnHistory.addAll(olderWrapped);
+        lineHistory.addAll(older);
+
+        final int historySize = settings.getHistorySize();
+        drawnHistory.trimTo(historySize);
+        lineHistory.trimTo(historySize);
+    }
+
+    @Override
+    public void deleteChatLine(final int id) {
+        drawnHistory.removeLinesWithId(id);
+        lineHistory.removeLinesWithId(id);
+    }
 
     /**
-     * The prefix for sent messages in this tab.
+     * Checks whether this tab holds lines with the given line ID.
+     *
+     * @param id The non-zero line ID.
+     * @return Whether there are lines with the ID.
      */
-    @Getter @Setter private String prefix;
+    public boolean holdsLineId(final int id) {
+        return drawnHistory.containsLineId(id) || lineHistory.containsLineId(id);
+    }
 
     /**
-     * How much history is kept. Stored as the float representation to prevent precision loss.
+     * Marks this tab as read.
      */
-    @Getter @Setter private float history;
+    public void markRead() {
+        unread = false;
+        lastViewed = System.nanoTime();
+    }
 
     /**
-     * Obtains the history size from a [0.0, 1.0] float.
+     * Drops the oldest lines while they are older than the retention time of this tab. Lines are received in time
+     * order, so the lines which are kept are not looked at.
      *
-     * @param val The float.
-     * @return The history size.
+     * @param updateCounter The current update counter.
+     * @return The update counter when the oldest kept line expires, or {@link #NO_EXPIRY} if no line expires.
      */
-    public static int getHistorySize(final float val) {
-        final float maxVal = 0.99666f;  // Produces cutoff at approx. 1 million.
-        if (val >= maxVal) {
-            return HISTORY_INFINITE;
-        } else {
-            return (int) Math.floor(Math.pow(100.0f, 3.0f * val));
+    public long expireLines(final int updateCounter) {
+        final int retentionTicks = settings.getRetentionTicks();
+        if (retentionTicks == TabSettings.RETENTION_FOREVER) {
+            return NO_EXPIRY;
+        }
+
+        while (true) {
+            // Wrapped lines are evicted with their received line, so only leftovers remain without received lines.
+            final LineHistory<ChatLine> oldestHistory = lineHistory.isEmpty() ? drawnHistory : lineHistory;
+            if (oldestHistory.isEmpty()) {
+                return NO_EXPIRY;
+            }
+
+            final long expiry = (long) oldestHistory.get(oldestHistory.size() - 1).getUpdatedCounter() + retentionTicks;
+            if (expiry > updateCounter) {
+                return expiry;
+            }
+            evictOldest();
         }
     }
 
     /**
-     * Constructor.
+     * Returns the number of received lines this tab keeps.
      *
-     * @param mc The minecraft reference.
+     * @return The number of received lines.
      */
-    public ChatTab(final Minecraft mc, final String pattern, final boolean literal, final boolean whitelist,
-                   final boolean notify, final String prefix, final float history) {
-        super(mc);
-        this.pattern = pattern;
-        this.literal = literal;
-        this.whitelist = whitelist;
-        this.notify = notify;
-        this.prefix = prefix;
-        this.history = history;
-        filter = Pattern.compile(pattern, literal ? Pattern.LITERAL : 0).matcher("");
+    public int getReceivedLineCount() {
+        return lineHistory.size();
     }
 
     /**
-     * Updates the filter pattern.
+     * Returns the number of wrapped lines this tab keeps.
      *
-     * @param pattern   The new pattern.
-     * @param literal   Whether the pattern will be escaped.
-     * @param whitelist Whether the tab implements a whitelist or a blacklist.
-     * @param notify    Whether this tab will play notification sounds.
+     * @return The number of wrapped lines.
      */
-    public void updatePattern(final String pattern, final boolean literal, final boolean whitelist,
-                              final boolean notify) {
-        this.pattern = pattern;
-        this.literal = literal;
-        this.whitelist = whitelist;
-        this.notify = notify;
-        filter = Pattern.compile(pattern, literal ? Pattern.LITERAL : 0).matcher("");
+    public int getWrappedLineCount() {
+        return drawnHistory.size();
     }
 
     @Override
-    public void printChatMessageWithOptionalDeletion(final ITextComponent chatComponent, final int chatLineId) {
-        super.printChatMessageWithOptionalDeletion(chatComponent, chatLineId);
-        unread = true;
-        if (notify) {
-            final float before = Minecraft.getMinecraft().gameSettings.getSoundLevel(SoundCategory.RECORDS);
-            Minecraft.getMinecraft().gameSettings.setSoundLevel(SoundCategory.RECORDS, 1.0f);
-            Minecraft.getMinecraft().player.playSound(SoundEvents.BLOCK_NOTE_CHIME, 1.0f, 1.0f);
-            Minecraft.getMinecraft().gameSettings.setSoundLevel(SoundCategory.RECORDS, before);
-        }
+    public long getUsedBytes() {
+        return drawnHistory.getBytes() + lineHistory.getBytes();
     }
 
     @Override
-    protected void setChatLine(final ITextComponent chatComponent, final int chatLineId, final int updateCounter,
-                               final boolean displayOnly) {
-        if (chatLineId != 0) {
-            this.deleteChatLine(chatLineId);
+    public boolean isOldestShared() {
+        // The wrapped lines are shared along with the received line.
+        return lineHistory.isEmpty() ? drawnHistory.isOldestShared() : lineHistory.isOldestShared();
+    }
+
+    @Override
+    public boolean evictOldest() {
+        if (lineHistory.isEmpty()) {
+            if (drawnHistory.isEmpty()) {
+                return false;
+            }
+            drawnHistory.removeOldest();
+            return true;
         }
 
-        final int maxLength = MathHelper.floor((float) getChatWidth() / getChatScale());
-        final List<ITextComponent> splitComponents = GuiUtilRenderComponents.splitText(chatComponent, maxLength,
-                Minecraft.getMinecraft().fontRenderer, false, false);
-        final boolean isChatOpen = getChatOpen();
+        // Only the wrapped lines of the message itself, the ones of newer messages from the same tick stay. If the
+        // wrapped lines were trimmed already, the oldest wrapped lines belong to a newer message.
+        final ChatLine line = lineHistory.removeOldest();
+        while (!drawnHistory.isEmpty() && isWrappedFrom(drawnHistory.get(drawnHistory.size() - 1), line)) {
+            drawnHistory.removeOldest();
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether a drawn line is one of the wrapped lines of a received line.
+     *
+     * @param wrappedLine The drawn line.
+     * @param line        The received line.
+     * @return Whether the drawn line was wrapped from the received line.
+     */
+    private static boolean isWrappedFrom(final ChatLine wrappedLine, final ChatLine line) {
+        if (line instanceof SharedChatLine) {
+            return wrappedLine instanceof SharedChatLine && ((SharedChatLine) wrappedLine).isWrappedFrom(
+                    (SharedChatLine) line);
+        }
+
+        // Lines which are not shared don't know their wrapped lines, which have the update counter and ID of the line.
+        return !(wrappedLine instanceof SharedChatLine) && wrappedLine.getUpdatedCounter() == line.getUpdatedCounter()
+                && wrappedLine.getChatLineID() == line.getChatLineID();
+    }
 
-        for (final ITextComponent comp : splitComponents) {
+    /**
+     * Draws the scroll bar of the open chat, if not all lines are drawn.
+     *
+     * @param drawnLines The number of drawn lines.
+     */
+    private void drawScrollBar(final int drawnLines) {
+        final int fontHeight = client.getFontRenderer().FONT_HEIGHT;
+        final int lines = drawnHistory.size();
+        final int totalHeight = lines * fontHeight + lines;
+        final int drawnHeight = drawnLines * fontHeight + drawnLines;
+        if (totalHeight == drawnHeight) {
+            return;
+        }
+
+        client.translate(-3.0f, 0.0f);
+        final int barTop = scrollPos * drawnHeight / lines;
+        final int barHeight = drawnHeight * drawnHeight / totalHeight;
+        final int barAlpha = barTop > 0 ? 170 : 96;
+        final int barColor = isScrolled ? 0xCC3333 : 0x3333AA;
+        client.drawRect(0, -barTop, 2, -barTop - barHeight, barColor + (barAlpha << 24));
+        client.drawRect(2, -barTop, 1, -barTop - barHeight, 0xCCCCCC + (barAlpha << 24));
+    }
+
+    /**
+     * Wraps a line and adds the wrapped lines as the newest drawn lines.
+     *
+     * @param line The line.
+     */
+    private void addNewestWrapped(final ChatLine line) {
+        final boolean isChatOpen = getChatOpen();
+        for (final ChatLine wrappedLine : wrap(line, getWrapWidth())) {
             if (isChatOpen && scrollPos > 0) {
                 isScrolled = true;
                 scroll(1);
             }
 
-            drawnChatLines.add(0, new ChatLine(updateCounter, comp, chatLineId));
+            drawnHistory.addNewest(wrappedLine);
         }
+        drawnHistory.trimTo(settings.getHistorySize());
+    }
 
-        final int historySize = getHistorySize(history);
-        while (historySize != HISTORY_INFINITE && drawnChatLines.size() > historySize) {
-            drawnChatLines.remove(drawnChatLines.size() - 1);
+    /**
+     * Wraps a line, reusing the wrapped lines of shared lines.
+     *
+     * @param line  The line.
+     * @param width The maximum width of a wrapped line.
+     * @return The wrapped lines, in reading order.
+     */
+    private List<ChatLine> wrap(final ChatLine line, final int width) {
+        if (line instanceof SharedChatLine) {
+            return ((SharedChatLine) line).getWrapped(width, wrapper);
         }
 
-        if (!displayOnly) {
-            chatLines.add(0, new ChatLine(updateCounter, chatComponent, chatLineId));
-
-            while (historySize != HISTORY_INFINITE && chatLines.size() > historySize) {
-                chatLines.remove(chatLines.size() - 1);
-            }
+        final List<ITextComponent> splitComponents = wrapper.split(line.getChatComponent(), width);
+        final List<ChatLine> wrappedLines = new ArrayList<>(splitComponents.size());
+        for (final ITextComponent component : splitComponents) {
+            wrappedLines.add(new ChatLine(line.getUpdatedCounter(), component, line.getChatLineID()));
         }
+        return wrappedLines;
     }
 
     /**
-     * Whether this tab accepts the given message for display.
+     * Returns the width lines are wrapped to.
      *
-     * @param message The message.
-     * @return Whether it is accepted.
+     * @return The chat width divided by the chat scale.
      */
-    public boolean acceptsMessage(final CharSequence message) {
-        filter.reset(message);
-        return filter.find() == whitelist;
+    private int getWrapWidth() {
+        return MathHelper.floor((float) getChatWidth() / getChatScale());
     }
 
     /**
-     * Marks this tab as read.
+     * Marks this tab unread and plays the notification sound if enabled.
      */
-    public void markRead() {
-        unread = false;
+    private void notifyReceived() {
+        unread = true;
+        if (settings.isNotify()) {
+            client.playNotification();
+        }
     }
 
     /**
-     * Returns the export part of this tab.
+     * Estimates the memory a tab uses for a chat line. The content of a shared line is counted once for all tabs by
+     * the line itself, so the tab only uses a reference.
      *
-     * @return The export string.
+     * @param line The chat line.
+     * @return The estimated size in bytes.
      */
-    public String getExport() {
-        return pattern + "§" + literal + "§" + prefix + "§" + whitelist + "§" + notify + "§" + history;
+    private static int estimateBytes(final ChatLine line) {
+        return line instanceof SharedChatLine ? REFERENCE_OVERHEAD : estimateContentBytes(line);
+    }
+
+    /**
+     * Estimates the memory used by the content of a chat line.
+     *
+     * @param line The chat line.
+     * @return The estimated size in bytes.
+     */
+    static int estimateContentBytes(final ChatLine line) {
+        int bytes = LINE_OVERHEAD;
+        for (final ITextComponent component : line.getChatComponent()) {
+            bytes += COMPONENT_OVERHEAD + 2 * component.getUnformattedComponentText().length();
+        }
+        return bytes;
     }
 }
@@ -0,0 +1,126 @@
+package nge.lk.mods.simpletabs.tabs;
+
+import lombok.Getter;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.gui.FontRenderer;
+import net.minecraft.client.gui.Gui;
+import net.minecraft.client.gui.GuiChat;
+import net.minecraft.client.gui.ScaledResolution;
+import net.minecraft.client.renderer.GlStateManager;
+import net.minecraft.client.resources.IReloadableResourceManager;
+import net.minecraft.client.resources.IResourceManagerReloadListener;
+import net.minecraft.client.settings.GameSettings;
+import net.minecraft.init.SoundEvents;
+import net.minecraft.util.SoundCategory;
+import org.lwjgl.input.Mouse;
+
+/**
+ * The chat client of the running game.
+ */
+public class GameChatClient implements ChatClient {
+
+    /**
+     * The minecraft reference.
+     */
+    @Getter private final Minecraft minecraft;
+
+    /**
+     * Constructor.
+     *
+     * @param minecraft The minecraft reference.
+     */
+    public GameChatClient(final Minecraft minecraft) {
+        this.minecraft = minecraft;
+    }
+
+    @Override
+    public GameSettings getGameSettings() {
+        return minecraft.gameSettings;
+    }
+
+    @Override
+    public FontRenderer getFontRenderer() {
+        return minecraft.fontRenderer;
+    }
+
+    @Override
+    public void addReloadListener(final IResourceManagerReloadListener listener) {
+        ((IReloadableResourceManager) minecraft.getResourceManager()).registerReloadListener(listener);
+    }
+
+    @Override
+    public int getUpdateCounter() {
+        return minecraft.ingameGUI.getUpdateCounter();
+    }
+
+    @Override
+    public boolean isChatOpen() {
+        return minecraft.currentScreen instanceof GuiChat;
+    }
+
+    @Override
+    public int getScaleFactor() {
+        return new ScaledResolution(minecraft).getScaleFactor();
+    }
+
+    @Override
+    public int getMouseX() {
+        return Mouse.getX();
+    }
+
+    @Override
+    public int getMouseY() {
+        return Mouse.getY();
+    }
+
+    @Override
+    public void runOnClientThread(final Runnable task) {
+        minecraft.addScheduledTask(task);
+    }
+
+    @Override
+    public void playNotification() {
+        final float before = minecraft.gameSettings.getSoundLevel(SoundCategory.RECORDS);
+        minecraft.gameSettings.setSoundLevel(SoundCategory.RECORDS, 1.0f);
+        minecraft.player.playSound(SoundEvents.BLOCK_NOTE_CHIME, 1.0f, 1.0f);
+        minecraft.gameSettings.setSoundLevel(SoundCategory.RECORDS, before);
+    }
+
+    @Override
+    public void pushMatrix() {
+        GlStateManager.pushMatrix();
+    }
+
+    @Override
+    public void popMatrix() {
+        GlStateManager.popMatrix();
+    }
+
+    @Override
+    public void translate(final float x, final float y) {
+        GlStateManager.translate(x, y, 0.0f);
+    }
+
+    @Override
+    public void scale(final float factor) {
+        GlStateManager.scale(factor, factor, 1.0f);
+    }
+
+    @Override
+    public void drawRect(final int left, final int top, final int right, final int bottom, final int color) {
+        Gui.drawRect(left, top, right, bottom, color);
+    }
+
+    @Override
+    public void drawString(final String text, final int x, final int y, final int color) {
+        minecraft.fontRenderer.drawString(text, x, y, color);
+    }
+
+    @Override
+    public void drawStringWithShadow(final String text, final float x, final float y, final int color) {
+        GlStateManager.enableBlend();
+        minecraft.fontRenderer.drawStringWithShadow(text, x, y, color);
+        GlStateManager.disableAlpha();
+        GlStateManager.disableBlend();
+    }
+}
@@ -0,0 +1,110 @@
+package nge.lk.mods.simpletabs.tabs;
+
+import net.minecraft.client.gui.FontRenderer;
+import net.minecraft.client.gui.GuiUtilRenderComponents;
+import net.minecraft.util.text.ITextComponent;
+import nge.lk.mods.simpletabs.core.trace.TraceEvent;
+import nge.lk.mods.simpletabs.core.trace.Tracer;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Splits chat components into the components of their wrapped lines, shared by all tabs.
+ *
+ * The split components of recent messages are cached by content, so repeated messages (broadcasts, join and leave
+ * messages, bot output) share one immutable set of split components instead of splitting and allocating them again.
+ * All tabs wrap to the same width, so the cache holds one width at a time. Only the client thread wraps lines.
+ */
+class LineWrapper {
+
+    /**
+     * The maximum number of cached messages.
+     */
+    private static final int CACHE_SIZE = 256;
+
+    /**
+     * Measures text for wrapping.
+     */
+    private final FontRenderer fontMetrics;
+
+    /**
+     * The split components of recent messages in a {@code Component -> Split components} mapping, in access order.
+     */
+    private final Map<ITextComponent, List<ITextComponent>> recent =
+            new LinkedHashMap<ITextComponent, List<ITextComponent>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(final Entry<ITextComponent, List<ITextComponent>> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            };
+
+    /**
+     * The width of the cached split components, or {@code -1} if nothing is cached.
+     */
+    private int width = -1;
+
+    /**
+     * The number of times the wrapped lines became stale, by a new width or a refresh of the chat.
+     */
+    private int generation;
+
+    /**
+     * Constructor.
+     *
+     * @param fontMetrics Measures text for wrapping.
+     */
+    LineWrapper(final FontRenderer fontMetrics) {
+        this.fontMetrics = fontMetrics;
+    }
+
+    /**
+     * Returns the generation of wrapped lines, starting a new generation if the width changed. Wrapped lines from an
+     * older generation are stale.
+     *
+     * @param width The maximum width of a wrapped line.
+     * @return The generation.
+     */
+    int getGeneration(final int width) {
+        if (width != this.width) {
+            invalidate();
+            this.width = width;
+        }
+        return generation;
+    }
+
+    /**
+     * Splits a component into the components of its wrapped lines.
+     *
+     * @param component The component.
+     * @param width     The maximum width of a wrapped line.
+     * @return The split components, in reading order. Not modifiable and shared, so the components must not be
+     * modified either.
+     */
+    List<ITextComponent> split(final ITextComponent component, final int width) {
+        getGeneration(width);
+        List<ITextComponent> splitComponents = recent.get(component);
+        if (splitComponents == null) {
+            final Object trace = Tracer.begin(TraceEvent.WRAP);
+            splitComponents = Collections.unmodifiableList(GuiUtilRenderComponents.splitText(component, width,
+                    fontMetrics, false, false));
+            if (trace != null) {
+                Tracer.commit(trace, width, splitComponents.size());
+            }
+            recent.put(component, splitComponents);
+        }
+        return splitComponents;
+    }
+
+    /**
+     * Starts a new generation and drops the cached split components, e.g. after the font changed.
+     */
+    void invalidate() {
+        recent.clear();
+        width = -1;
+        generation++;
+    }
+}
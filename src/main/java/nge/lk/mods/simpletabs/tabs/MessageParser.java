@@ -0,0 +1,107 @@
+package nge.lk.mods.simpletabs.tabs;
+
+import net.minecraft.util.text.ITextComponent;
+import net.minecraft.util.text.Style;
+import net.minecraft.util.text.TextComponentTranslation;
+import net.minecraft.util.text.event.ClickEvent;
+import net.minecraft.util.text.event.HoverEvent;
+import nge.lk.mods.simpletabs.core.MessageNormalizer;
+import nge.lk.mods.simpletabs.core.filter.FieldExtractor;
+import nge.lk.mods.simpletabs.core.filter.ParsedMessage;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parses chat components into messages, taking the sender from the component structure where possible.
+ */
+public final class MessageParser {
+
+    /**
+     * The translation keys of vanilla chat messages whose first argument is the sender.
+     */
+    private static final String[] SENDER_TRANSLATIONS = {
+            "chat.type.text", "chat.type.emote", "chat.type.announcement", "commands.message.display.incoming"
+    };
+
+    /**
+     * The commands which servers commonly suggest when clicking a player name.
+     */
+    private static final Pattern MESSAGE_COMMAND = Pattern.compile("^/(?:msg|tell|w|whisper|m|r) ([^ ]+)");
+
+    /**
+     * The name in the NBT of an entity hover event.
+     */
+    private static final Pattern ENTITY_NAME = Pattern.compile("name:\"?([^\",}]+)");
+
+    /**
+     * Parses a chat component. The sender is only looked up in the components if a filter needs it.
+     *
+     * @param chatComponent The chat component.
+     * @param extractor     Extracts the fields which are not found in the components.
+     * @return The parsed message.
+     */
+    public static ParsedMessage parse(final ITextComponent chatComponent, final FieldExtractor extractor) {
+        final String plainMessage = MessageNormalizer.stripFormatting(chatComponent.getUnformattedText());
+        return extractor.parse(plainMessage, null, () -> findSender(chatComponent), chatComponent);
+    }
+
+    /**
+     * Finds the sender of a message in its components.
+     *
+     * @param chatComponent The chat component.
+     * @return The sender, or {@code null} if the components do not identify the sender.
+     */
+    private static String findSender(final ITextComponent chatComponent) {
+        if (chatComponent instanceof TextComponentTranslation) {
+            final TextComponentTranslation translation = (TextComponentTranslation) chatComponent;
+            for (final String key : SENDER_TRANSLATIONS) {
+                if (key.equals(translation.getKey()) && translation.getFormatArgs().length > 0) {
+                    final Object sender = translation.getFormatArgs()[0];
+                    return MessageNormalizer.stripFormatting(sender instanceof ITextComponent
+                            ? ((ITextComponent) sender).getUnformattedText() : String.valueOf(sender));
+                }
+            }
+        }
+
+        // Servers commonly attach click or hover events to the sender's name, which is the first such component.
+        for (final ITextComponent component : chatComponent) {
+            final String sender = findSenderInStyle(component.getStyle());
+            if (sender != null) {
+                return sender;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds the sender in the events of a component's style.
+     *
+     * @param style The style.
+     * @return The sender, or {@code null} if the events do not identify a player.
+     */
+    private static String findSenderInStyle(final Style style) {
+        final ClickEvent click = style.getClickEvent();
+        if (click != null && click.getAction() == ClickEvent.Action.SUGGEST_COMMAND) {
+            final Matcher matcher = MESSAGE_COMMAND.matcher(click.getValue());
+            if (matcher.find()) {
+                return matcher.group(1);
+            }
+        }
+
+        final HoverEvent hover = style.getHoverEvent();
+        if (hover != null && hover.getAction() == HoverEvent.Action.SHOW_ENTITY) {
+            final Matcher matcher = ENTITY_NAME.matcher(hover.getValue().getUnformattedText());
+            if (matcher.find()) {
+                return matcher.group(1);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Utility class.
+     */
+    private MessageParser() {
+    }
+}
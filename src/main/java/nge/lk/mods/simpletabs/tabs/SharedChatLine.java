@@ -0,0 +1,144 @@
+package nge.lk.mods.simpletabs.tabs;
+
+import lombok.Getter;
+import net.minecraft.client.gui.ChatLine;
+import net.minecraft.util.text.ITextComponent;
+import nge.lk.mods.simpletabs.core.SharedLine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A chat line which is stored once and shared by all tabs that accepted the message, instead of each tab holding its
+ * own copy. A received line also caches its wrapped lines, which are shared the same way, and the components of the
+ * wrapped lines are shared with repeated messages by the {@link LineWrapper}.
+ *
+ * The histories holding a shared line are counted, so its content counts against the memory budget once, no matter
+ * whether the tabs got the line when it was received or later by catching up or backfilling. The serial number
+ * identifies the line in compressed histories, so it stays shared after being decompressed. Wrapped lines also keep
+ * the serial number of their received line, so a tab can tell which wrapped lines belong to a message.
+ *
+ * Only the client thread accesses shared lines.
+ */
+class SharedChatLine extends ChatLine implements SharedLine {
+
+    /**
+     * The serial number of the last created line.
+     */
+    private static long lastSerial;
+
+    /**
+     * The serial number of this line, which is unique and never {@link ChatLineCodec#NOT_SHARED}.
+     */
+    @Getter private final long serial;
+
+    /**
+     * The serial number of the received line this line was wrapped from, or {@link ChatLineCodec#NOT_SHARED} if this
+     * is a received line.
+     */
+    @Getter private final long sourceSerial;
+
+    /**
+     * The number of histories holding this line.
+     */
+    @Getter private int holders;
+
+    /**
+     * The estimated size of the content in bytes, or {@code -1} if it was not estimated yet.
+     */
+    private int contentBytes = -1;
+
+    /**
+     * The {@link LineWrapper#getGeneration wrapping generation} of the cached wrapped lines, or {@code -1} if there are
+     * none.
+     */
+    private int wrapGeneration = -1;
+
+    /**
+     * The cached wrapped lines, in reading order.
+     */
+    private List<ChatLine> wrappedLines;
+
+    /**
+     * Constructor.
+     *
+     * @param updateCounter The update counter when the line was received.
+     * @param component     The text component.
+     * @param chatLineId    The line ID, or {@code 0}.
+     */
+    SharedChatLine(final int updateCounter, final ITextComponent component, final int chatLineId) {
+        this(++lastSerial, ChatLineCodec.NOT_SHARED, updateCounter, component, chatLineId);
+    }
+
+    /**
+     * Constructor for a line which was decompressed after the original line was dropped.
+     *
+     * @param serial        The serial number of the original line.
+     * @param sourceSerial  The serial number of the received line the original line was wrapped from, or
+     *                      {@link ChatLineCodec#NOT_SHARED} if it is a received line.
+     * @param updateCounter The update counter when the line was received.
+     * @param component     The text component.
+     * @param chatLineId    The line ID, or {@code 0}.
+     */
+    SharedChatLine(final long serial, final long sourceSerial, final int updateCounter,
+                   final ITextComponent component, final int chatLineId) {
+        super(updateCounter, component, chatLineId);
+        this.serial = serial;
+        this.sourceSerial = sourceSerial;
+    }
+
+    @Override
+    public long retain() {
+        return holders++ == 0 ? getContentBytes() : 0;
+    }
+
+    @Override
+    public long release() {
+        return --holders == 0 ? getContentBytes() : 0;
+    }
+
+    /**
+     * Checks whether this line is one of the wrapped lines of a received line.
+     *
+     * @param line The received line.
+     * @return Whether this line was wrapped from the received line.
+     */
+    boolean isWrappedFrom(final SharedChatLine line) {
+        return sourceSerial == line.serial;
+    }
+
+    /**
+     * Returns the wrapped lines of this line, wrapping it only if the cached wrapped lines are stale.
+     *
+     * @param width   The maximum width of a wrapped line.
+     * @param wrapper Splits the line, sharing the split components of repeated messages.
+     * @return The wrapped lines, in reading order. Not modifiable.
+     */
+    List<ChatLine> getWrapped(final int width, final LineWrapper wrapper) {
+        final int generation = wrapper.getGeneration(width);
+        if (generation != wrapGeneration) {
+            final List<ITextComponent> splitComponents = wrapper.split(getChatComponent(), width);
+            final List<ChatLine> lines = new ArrayList<>(splitComponents.size());
+            for (final ITextComponent component : splitComponents) {
+                lines.add(new SharedChatLine(++lastSerial, serial, getUpdatedCounter(), component, getChatLineID()));
+            }
+
+            wrappedLines = Collections.unmodifiableList(lines);
+            wrapGeneration = generation;
+        }
+        return wrappedLines;
+    }
+
+    /**
+     * Returns the estimated size of the content, estimating it on first access. The component never changes.
+     *
+     * @return The estimated size in bytes.
+     */
+    private int getContentBytes() {
+        if (contentBytes < 0) {
+            contentBytes = ChatTab.estimateContentBytes(this);
+        }
+        return contentBytes;
+    }
+}
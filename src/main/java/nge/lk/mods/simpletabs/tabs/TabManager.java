@@ -2,19 +2,36 @@ package nge.lk.mods.simpletabs.tabs;
 
 import lombok.Getter;
 import net.minecraft.client.Minecraft;
+import net.minecraft.client.gui.ChatLine;
 import net.minecraft.client.gui.GuiNewChat;
 import net.minecraft.util.text.ITextComponent;
+import nge.lk.mods.commonlib.util.DebugUtil;
 import nge.lk.mods.simpletabs.GuiTabEditor;
+import nge.lk.mods.simpletabs.core.LineIdIndex;
+import nge.lk.mods.simpletabs.core.MemoryBudget;
+import nge.lk.mods.simpletabs.core.MessageLog;
+import nge.lk.mods.simpletabs.core.TabGroup;
+import nge.lk.mods.simpletabs.core.TabGroups;
+import nge.lk.mods.simpletabs.core.TabIO;
+import nge.lk.mods.simpletabs.core.TabProfiles;
+import nge.lk.mods.simpletabs.core.TabSettings;
+import nge.lk.mods.simpletabs.core.TimerWheel;
+import nge.lk.mods.simpletabs.core.filter.FieldExtractor;
+import nge.lk.mods.simpletabs.core.filter.FilterMode;
+import nge.lk.mods.simpletabs.core.filter.FilterNode;
+import nge.lk.mods.simpletabs.core.filter.ParsedMessage;
+import nge.lk.mods.simpletabs.core.trace.TraceEvent;
+import nge.lk.mods.simpletabs.core.trace.Tracer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
 import java.io.File;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.LinkedHashMap;
-import java.util.LinkedList;
+import java.util.Deque;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
 
 /**
  * The owner of all tabs, managing the tab configurations.
@@ -22,14 +39,40 @@ import java.util.Map.Entry;
 public class TabManager {
 
     /**
-     * The existing tabs in a {@code Name -> Tab} mapping, one for each tab group.
+     * Logs the received messages, like the vanilla chat does.
      */
-    private final List<Map<String, ChatTab>> tabs;
+    private static final Logger LOGGER = LogManager.getLogger();
 
     /**
-     * The IO manager.
+     * The number of recent messages which are kept for filling the history of new or edited tabs.
      */
-    private final TabIO tabIO;
+    private static final int MESSAGE_LOG_SIZE = 4096;
+
+    /**
+     * The maximum number of messages kept for the quiet tabs of an inactive group. Must be smaller than the size of the
+     * message log.
+     */
+    private static final int MAX_DEFERRED_MESSAGES = 256;
+
+    /**
+     * The game as seen by the chat.
+     */
+    private final ChatClient client;
+
+    /**
+     * The tab configurations of the servers.
+     */
+    private final TabProfiles<ChatTab> profiles;
+
+    /**
+     * The tab groups of the active profile.
+     */
+    private TabGroups<ChatTab> tabs;
+
+    /**
+     * The IO manager of the active profile.
+     */
+    private TabIO<ChatTab> tabIO;
 
     /**
      * The display manager.
@@ -37,43 +80,110 @@ public class TabManager {
     private final TabDisplay tabDisplay;
 
     /**
-     * The active tab group.
+     * The tabs which received lines with a line ID.
      */
-    @Getter private int activeGroup;
+    private final LineIdIndex<ChatTab> lineIdIndex = new LineIdIndex<>(ChatTab::holdsLineId);
 
     /**
-     * The currently active tab.
+     * Extracts channel, sender and body of received messages.
      */
-    private String activeTab;
+    private final FieldExtractor fieldExtractor;
 
     /**
-     * The offset of the leftmost tab.
+     * The most recent messages, regardless of the tabs accepting them.
      */
-    @Getter private int tabOffset;
+    private final MessageLog<SharedChatLine> messageLog = new MessageLog<>(MESSAGE_LOG_SIZE);
 
     /**
-     * Constructor.
-     *
-     * @param saveFile The file where tab configurations are saved in.
+     * The logged messages which the quiet tabs of each inactive group may accept but did not see yet, by the index of
+     * the group. A group catches up when it is activated. Once too many messages are kept, the oldest one is matched
+     * whenever another one is kept, so catching up stays short. Kept messages may have left the log meanwhile, so they
+     * are dropped here when their line is deleted or replaced.
      */
-    public TabManager(final File saveFile) {
-        tabIO = new TabIO(saveFile);
-        tabDisplay = new TabDisplay(this);
+    private final List<Deque<MessageLog.Entry<SharedChatLine>>> deferredMessages = new ArrayList<>();
 
-        tabs = new ArrayList<>();
-        tabs.add(new LinkedHashMap<>());
+    /**
+     * Whether a group other than the active one may have unread messages. Set when a message is kept for or delivered
+     * to another group, and updated from all tabs when another group or profile is activated.
+     */
+    private boolean otherGroupUnread;
 
-        loadState();
+    /**
+     * The timers of the tabs with a retention time, expiring when the oldest line of the tab expires. Uses the scale
+     * of the chat's update counter.
+     */
+    private final TimerWheel<ChatTab> expiryTimers = new TimerWheel<>(0);
 
-        activeGroup = 0;
-        if (tabs.isEmpty()) {
-            // Only add the default tab if there is no tab group whatsoever.
-            tabs.add(new LinkedHashMap<>());
-            addDefaultTab();
-        }
+    /**
+     * The memory budget of the histories of all tabs.
+     */
+    @Getter private final MemoryBudget memoryBudget = MemoryBudget.createDefault();
 
-        // At this point, all tab groups must not be empty.
-        activeTab = tabs.get(activeGroup).keySet().stream().findFirst().get();
+    /**
+     * Measures text for wrapping and the tab bar, caching the widths.
+     */
+    @Getter private final CachingFontRenderer fontMetrics;
+
+    /**
+     * Splits lines for wrapping, sharing the split components of repeated messages between all tabs.
+     */
+    private final LineWrapper lineWrapper;
+
+    /**
+     * Compresses the old lines of all tabs.
+     */
+    private final ChatLineCodec lineCodec = new ChatLineCodec();
+
+    /**
+     * Starts loading the saved tabs of the default profile and compiling their filters in the background. The tab
+     * manager which is created later takes the loaded tabs over.
+     *
+     * @param saveFile The file where the tab configurations of the default profile are saved in.
+     */
+    public static void preloadDefaultProfile(final File saveFile) {
+        TabProfiles.preloadDefaultProfile(saveFile);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param saveFile         The file where the tab configurations of the default profile are saved in.
+     * @param profileDirectory The directory where the tab configurations of the server profiles are saved in.
+     * @param fieldRulesFile   The file containing the rules for extracting message fields.
+     */
+    public TabManager(final File saveFile, final File profileDirectory, final File fieldRulesFile) {
+        this(saveFile, profileDirectory, fieldRulesFile, new GameChatClient(Minecraft.getMinecraft()));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param saveFile         The file where the tab configurations of the default profile are saved in.
+     * @param profileDirectory The directory where the tab configurations of the server profiles are saved in.
+     * @param fieldRulesFile   The file containing the rules for extracting message fields.
+     * @param client           The game as seen by the chat.
+     */
+    public TabManager(final File saveFile, final File profileDirectory, final File fieldRulesFile,
+                      final ChatClient client) {
+        this.client = client;
+        fontMetrics = new CachingFontRenderer(client.getGameSettings(), client.getFontRenderer());
+        client.addReloadListener(fontMetrics);
+        lineWrapper = new LineWrapper(fontMetrics);
+        fieldExtractor = FieldExtractor.load(fieldRulesFile);
+        tabDisplay = new TabDisplay(this, client);
+        profiles = new TabProfiles<>(saveFile, profileDirectory, this::createChatTab);
+        tabIO = profiles.getDefaultProfile().getTabIO();
+        tabs = profiles.getDefaultProfile().getTabs();
+    }
+
+    /**
+     * Creates a chat tab with the given settings.
+     *
+     * @param settings The settings.
+     * @return The chat tab.
+     */
+    private ChatTab createChatTab(final TabSettings settings) {
+        return new ChatTab(client, settings, memoryBudget, lineWrapper, lineCodec);
     }
 
     /**
@@ -83,46 +193,325 @@ public class TabManager {
      * @param chatLineId    The chat line.
      */
     public void printChatMessageWithOptionalDeletion(final ITextComponent chatComponent, final int chatLineId) {
-        final String plainMessageWithColors = chatComponent.getUnformattedText();
-        final StringBuilder plainBuilder = new StringBuilder();
-        boolean isEscape = false;
-        for (final char c : plainMessageWithColors.toCharArray()) {
-            if (c == '§') {
-                isEscape = true;
-            } else {
-                if (!isEscape) {
-                    plainBuilder.append(c);
+        if (chatLineId != 0) {
+            // The message replaces the line with the same ID in every tab, even if it is not accepted there anymore.
+            deleteChatLine(chatLineId);
+        }
+
+        final Object trace = Tracer.begin(TraceEvent.ROUTE);
+        final ParsedMessage message = MessageParser.parse(chatComponent, fieldExtractor);
+        final List<ChatTab> acceptingTabs = new ArrayList<>();
+        tabs.route(message, acceptingTabs::add);
+
+        // The line is stored once, and all accepting tabs and the message log refer to it.
+        final int updateCounter = client.getUpdateCounter();
+        final SharedChatLine line = new SharedChatLine(updateCounter, chatComponent, chatLineId);
+        for (final ChatTab tab : acceptingTabs) {
+            deliver(tab, line, updateCounter);
+        }
+        if (trace != null) {
+            Tracer.commit(trace, message.getText().length(), acceptingTabs.size());
+        }
+        deferMessage(messageLog.append(message, chatLineId, line), updateCounter);
+        LOGGER.info("[CHAT] {}", chatComponent.getUnformattedText().replaceAll("\r", "\\\\r")
+                .replaceAll("\n", "\\\\n"));
+
+        if (memoryBudget.isExceeded()) {
+            memoryBudget.enforce(tabs.getAllTabs(), getActiveChat());
+        }
+    }
+
+    /**
+     * Hands a received line to a tab which accepted it.
+     *
+     * @param tab           The tab.
+     * @param line          The line.
+     * @param updateCounter The current update counter.
+     */
+    private void deliver(final ChatTab tab, final SharedChatLine line, final int updateCounter) {
+        tab.receive(line);
+        lineIdIndex.add(line.getChatLineID(), tab);
+        if (!otherGroupUnread && !tabs.isInActiveGroup(tab)) {
+            otherGroupUnread = true;
+        }
+        if (tab.getSettings().getRetention() != TabSettings.RETENTION_FOREVER && !expiryTimers.isScheduled(tab)) {
+            scheduleExpiry(tab, updateCounter);
+        }
+    }
+
+    /**
+     * Keeps a logged message for the inactive groups with deferred tabs which may accept it, matching the oldest kept
+     * message of groups which fell too far behind.
+     *
+     * @param entry         The entry of the message.
+     * @param updateCounter The current update counter.
+     */
+    private void deferMessage(final MessageLog.Entry<SharedChatLine> entry, final int updateCounter) {
+        for (int group = 0; group < tabs.getGroups().size(); group++) {
+            if (tabs.hasDeferredTabs(group) && tabs.mayAcceptDeferred(group, entry.getMessage())) {
+                while (deferredMessages.size() <= group) {
+                    deferredMessages.add(new ArrayDeque<>());
+                }
+                final Deque<MessageLog.Entry<SharedChatLine>> pending = deferredMessages.get(group);
+                pending.addLast(entry);
+                otherGroupUnread = true;
+                if (pending.size() > MAX_DEFERRED_MESSAGES) {
+                    deliverDeferred(group, pending.removeFirst(), updateCounter);
                 }
-                isEscape = false;
             }
         }
-        final String plainMessage = plainBuilder.toString();
+    }
 
-        for (final Map<String, ChatTab> tabMap : tabs) {
-            for (final ChatTab tab : tabMap.values()) {
-                if (tab.acceptsMessage(plainMessage)) {
-                    tab.printChatMessageWithOptionalDeletion(chatComponent, chatLineId);
-                }
+    /**
+     * Hands a kept message to the deferred tabs of a group which accept it, replacing their lines with the same line
+     * ID.
+     *
+     * @param group         The index of the group.
+     * @param entry         The entry of the message.
+     * @param updateCounter The current update counter.
+     */
+    private void deliverDeferred(final int group, final MessageLog.Entry<SharedChatLine> entry,
+                                 final int updateCounter) {
+        final int lineId = entry.getLineId();
+        for (final ChatTab tab : tabs.classifyDeferred(group, entry.getMessage())) {
+            if (lineId != 0 && tab.holdsLineId(lineId)) {
+                tab.deleteChatLine(lineId);
             }
+            deliver(tab, entry.getLine(), updateCounter);
+        }
+    }
+
+    /**
+     * Matches the messages a group did not see yet against its deferred tabs and hands them to the accepting tabs, in
+     * the order they were received.
+     *
+     * @param group The index of the group.
+     */
+    private void catchUp(final int group) {
+        if (group >= deferredMessages.size() || deferredMessages.get(group).isEmpty()) {
+            return;
+        }
+
+        final int updateCounter = client.getUpdateCounter();
+        final Deque<MessageLog.Entry<SharedChatLine>> pending = deferredMessages.get(group);
+        for (final MessageLog.Entry<SharedChatLine> entry : pending) {
+            deliverDeferred(group, entry, updateCounter);
+        }
+        pending.clear();
+
+        if (memoryBudget.isExceeded()) {
+            memoryBudget.enforce(tabs.getAllTabs(), getActiveChat());
+        }
+    }
+
+    /**
+     * Checks whether a group other than the active one may have unread messages. Messages which were deferred were
+     * only checked cheaply, so the check may report unread messages which the expensive filters of a group reject, or
+     * whose line was deleted meanwhile.
+     *
+     * @return Whether another group may have unread messages.
+     */
+    public boolean isOtherGroupUnread() {
+        return otherGroupUnread;
+    }
+
+    /**
+     * Finds out from all tabs and kept messages whether a group other than the active one may have unread messages.
+     */
+    private void updateOtherGroupUnread() {
+        otherGroupUnread = false;
+        final List<TabGroup<ChatTab>> groups = tabs.getGroups();
+        for (int group = 0; group < groups.size() && !otherGroupUnread; group++) {
+            if (group == tabs.getActiveGroup()) {
+                continue;
+            }
+            otherGroupUnread = group < deferredMessages.size() && !deferredMessages.get(group).isEmpty();
+            for (final ChatTab tab : groups.get(group).getTabs()) {
+                otherGroupUnread |= tab.isUnread();
+            }
+        }
+    }
+
+    /**
+     * Starts loading the tab profile of a server in the background, so activating it when the connection is
+     * established doesn't wait for it.
+     *
+     * @param address The server address.
+     */
+    public void preloadProfile(final String address) {
+        profiles.getServerProfile(address);
+    }
+
+    /**
+     * Activates the tab profile of a server. The tabs of the previous profile are emptied, and logged messages are not
+     * carried over.
+     *
+     * @param address The server address, or {@code null} for the default profile.
+     */
+    public void switchProfile(final String address) {
+        final TabProfiles.Profile<ChatTab> profile = profiles.getServerProfile(address);
+        if (profile.getTabIO() == tabIO) {
+            return;
+        }
+
+        for (final ChatTab tab : tabs.getAllTabs()) {
+            expiryTimers.cancel(tab);
+            tab.clearChatMessages(false);
+        }
+        lineIdIndex.clear();
+        messageLog.clear();
+        deferredMessages.clear();
+
+        tabIO = profile.getTabIO();
+        tabs = profile.getTabs();
+        updateOtherGroupUnread();
+    }
+
+    /**
+     * Drops the lines which are older than the retention time of their tab. Only the tabs whose oldest line expired
+     * are visited.
+     *
+     * @param updateCounter The current update counter.
+     */
+    public void expireLines(final int updateCounter) {
+        expiryTimers.advance(updateCounter, tab -> scheduleExpiry(tab, updateCounter));
+    }
+
+    /**
+     * Drops the expired lines of a tab and schedules its timer for the expiry of its oldest remaining line.
+     *
+     * @param tab           The tab.
+     * @param updateCounter The current update counter.
+     */
+    private void scheduleExpiry(final ChatTab tab, final int updateCounter) {
+        final long expiry = tab.expireLines(updateCounter);
+        if (expiry == ChatTab.NO_EXPIRY) {
+            expiryTimers.cancel(tab);
+        } else {
+            expiryTimers.schedule(tab, expiry);
         }
     }
 
     /**
-     * Creates a new tab.
+     * Deletes the lines with the given line ID from all tabs holding them, and drops the messages with the line ID
+     * which the inactive groups did not see yet.
+     *
+     * @param chatLineId The line ID.
+     */
+    public void deleteChatLine(final int chatLineId) {
+        lineIdIndex.remove(chatLineId, tab -> tab.deleteChatLine(chatLineId));
+        messageLog.removeLineId(chatLineId);
+        for (final Deque<MessageLog.Entry<SharedChatLine>> pending : deferredMessages) {
+            pending.removeIf(entry -> entry.getLineId() == chatLineId);
+        }
+    }
+
+    /**
+     * Clears the messages of all tabs.
+     *
+     * @param clearSent Whether the sent message history is cleared, too.
+     */
+    public void clearChatMessages(final boolean clearSent) {
+        tabs.getAllTabs().forEach(chat -> chat.clearChatMessages(clearSent));
+        lineIdIndex.clear();
+        messageLog.clear();
+        deferredMessages.clear();
+        updateOtherGroupUnread();
+    }
+
+    /**
+     * Wraps the lines of all tabs again, e.g. after the chat width or the font changed.
+     */
+    public void refreshChat() {
+        lineWrapper.invalidate();
+        tabs.getAllTabs().forEach(ChatTab::refreshChat);
+    }
+
+    /**
+     * Creates a new tab. Its history is filled with the logged messages it accepts in the background.
      *
      * @param title     The title of the tab.
      * @param pattern   The pattern the tab listens for.
-     * @param literal   Whether the pattern is literal.
+     * @param mode      How the pattern is interpreted.
      * @param whitelist Whether or not this tab uses a whitelist.
      * @param prefix    The prefix for sent chat messages.
      * @param notify    Whether or not this tab notifies the user when a message is received.
      * @param history   The number of lines of history the tab keeps. Using the float representation to prevent precision
      *                  loss.
+     * @param retention The minutes received lines are kept, or {@link TabSettings#RETENTION_FOREVER}.
+     */
+    public void createTab(final String title, final String pattern, final FilterMode mode, final boolean whitelist,
+                          final String prefix, final boolean notify, final float history, final int retention) {
+        backfill(tabs.createTab(title, new TabSettings(pattern, mode, whitelist, notify, prefix, history, retention)));
+    }
+
+    /**
+     * Updates the retention time of a tab, dropping the lines which are older right away.
+     *
+     * @param tab       The tab.
+     * @param retention The minutes received lines are kept, or {@link TabSettings#RETENTION_FOREVER}.
+     */
+    public void updateRetention(final ChatTab tab, final int retention) {
+        tab.getSettings().setRetention(retention);
+        scheduleExpiry(tab, client.getUpdateCounter());
+    }
+
+    /**
+     * Updates the filter pattern of a tab. If the tab accepts different messages afterwards, its history is replaced
+     * with the logged messages it accepts in the background.
+     *
+     * @param tab       The tab.
+     * @param pattern   The new pattern.
+     * @param mode      How the pattern is interpreted.
+     * @param whitelist Whether the tab implements a whitelist or a blacklist.
+     * @param notify    Whether this tab will play notification sounds.
+     */
+    public void updatePattern(final ChatTab tab, final String pattern, final FilterMode mode, final boolean whitelist,
+                              final boolean notify) {
+        final FilterNode oldFilter = tab.getSettings().getFilter();
+        final boolean oldWhitelist = tab.getSettings().isWhitelist();
+        tabs.updatePattern(tab, pattern, mode, whitelist, notify);
+        if (tab.getSettings().getFilter() != oldFilter || whitelist != oldWhitelist) {
+            // Filters are interned, so an unchanged filter is the same node.
+            lineIdIndex.removeTab(tab);
+            tab.clearChatMessages(false);
+            backfill(tab);
+        }
+    }
+
+    /**
+     * Matches the logged messages against the filter of a tab in the background, then adds the accepted ones to the
+     * tab as its oldest lines. Nothing is added if the tab was edited or deleted meanwhile.
+     *
+     * @param tab The tab.
      */
-    public void createTab(final String title, final String pattern, final boolean literal, final boolean whitelist,
-                          final String prefix, final boolean notify, final float history) {
-        tabs.get(activeGroup).put(title, new ChatTab(Minecraft.getMinecraft(), pattern, literal, whitelist, notify,
-                prefix, history));
+    private void backfill(final ChatTab tab) {
+        final TabSettings settings = tab.getSettings();
+        final FilterNode filter = settings.getFilter();
+        final boolean whitelist = settings.isWhitelist();
+        messageLog.match(filter, whitelist).thenAccept(entries -> client.runOnClientThread(() -> {
+            if (settings.getFilter() != filter || settings.isWhitelist() != whitelist
+                    || !tabs.getAllTabs().contains(tab)) {
+                return;
+            }
+
+            final List<ChatLine> lines = new ArrayList<>(entries.size());
+            for (final MessageLog.Entry<SharedChatLine> entry : entries) {
+                if (!entry.isRemoved()) {
+                    lines.add(entry.getLine());
+                    lineIdIndex.add(entry.getLineId(), tab);
+                }
+            }
+            tab.appendOlder(lines);
+            scheduleExpiry(tab, client.getUpdateCounter());
+
+            if (memoryBudget.isExceeded()) {
+                memoryBudget.enforce(tabs.getAllTabs(), getActiveChat());
+            }
+        })).exceptionally(t -> {
+            DebugUtil.recoverableError(t);
+            return null;
+        });
     }
 
     /**
@@ -132,69 +521,74 @@ public class TabManager {
      * @return Whether it exists.
      */
     public boolean doesTabExistInActiveGroup(final String tab) {
-        return tabs.get(activeGroup).containsKey(tab);
+        return tabs.doesTabExistInActiveGroup(tab);
     }
 
     /**
      * Saves the tab configurations to the save file.
      */
     public void saveState() {
-        tabIO.saveState(tabs);
+        tabIO.saveState(tabs.getGroups());
     }
 
     /**
      * Shows the previous tab page.
      */
     public void previousTabPage() {
-        tabOffset = Math.max(0, tabOffset - TabDisplay.TABS_PER_PAGE);
+        tabs.previousTabPage(TabDisplay.TABS_PER_PAGE);
     }
 
     /**
      * Shows the next tab page.
      */
     public void nextTabPage() {
-        final int tabAmount = tabs.get(activeGroup).size();
-        if (tabOffset + TabDisplay.TABS_PER_PAGE < tabAmount) {
-            tabOffset += TabDisplay.TABS_PER_PAGE;
-        }
+        tabs.nextTabPage(TabDisplay.TABS_PER_PAGE);
     }
 
     /**
      * Cycles the current tab group.
      */
     public void cycleTabGroup() {
-        if (activeGroup + 1 < tabs.size()) {
-            activeGroup++;
-        } else {
-            assert activeGroup + 1 == tabs.size() : "invalid current group";
-            // Either the first group is selected, or a new group is created.
-            // A new group is only created if the current group is changed in any way.
-            final Map<String, ChatTab> group = tabs.get(activeGroup);
-            if (group.size() == 1) {
-                final String tabName = group.keySet().stream().findFirst().get();
-                if (tabName.equals("General")) {
-                    final ChatTab tab = group.values().stream().findFirst().get();
-                    if (!tab.isLiteral() && tab.isWhitelist() && tab.getPattern().equals(".*")
-                            && tab.getPrefix().isEmpty()) {
-                        activeGroup = 0;
-                        return;
-                    }
-                }
-            }
-            activeGroup++;
-            tabs.add(new LinkedHashMap<>());
-            addDefaultTab();
-        }
+        tabs.cycleTabGroup();
+        catchUp(tabs.getActiveGroup());
+        updateOtherGroupUnread();
+    }
+
+    /**
+     * Returns the active tab group.
+     *
+     * @return The index of the active tab group.
+     */
+    public int getActiveGroup() {
+        return tabs.getActiveGroup();
+    }
+
+    /**
+     * Returns the offset of the leftmost tab.
+     *
+     * @return The tab offset.
+     */
+    public int getTabOffset() {
+        return tabs.getTabOffset();
     }
 
     /**
-     * Checks whether the currently active tab has the given name.
+     * Checks whether the tab at the given position is the currently active tab.
      *
-     * @param name The name.
-     * @return Whether the name is the name of the currently active tab.
+     * @param position The position in the active tab group.
+     * @return Whether the tab is the currently active tab.
      */
-    public boolean isTabActive(final String name) {
-        return name.equals(activeTab);
+    public boolean isTabActive(final int position) {
+        return tabs.isTabActive(position);
+    }
+
+    /**
+     * Returns the position of the active tab.
+     *
+     * @return The position in the active tab group, or {@link TabGroup#NO_TAB} if no tab is active.
+     */
+    public int getActiveTabPosition() {
+        return tabs.getActiveTabPosition();
     }
 
     /**
@@ -206,45 +600,63 @@ public class TabManager {
     }
 
     /**
-     * Makes the tab with the given name active.
+     * Makes the tab at the given position active.
      *
-     * @param key The tab name.
+     * @param position The position in the active tab group.
      */
-    public void makeTabActive(final String key) {
-        if (doesTabExistInActiveGroup(key)) {
-            activeTab = key;
-        }
-        // Invariant: The current tab is valid, so no change is needed even if the tab name doesn't exist.
+    public void makeTabActive(final int position) {
+        tabs.makeTabActive(position);
     }
 
     /**
-     * Deletes the tab with the given name.
+     * Deletes the tab at the given position.
      *
-     * @param key The name.
+     * @param position The position in the active tab group.
      */
-    public void deleteTab(final String key) {
-        if (doesTabExistInActiveGroup(key)) {
-            tabs.get(activeGroup).remove(key);
+    public void deleteTab(final int position) {
+        if (position >= 0 && position < tabs.getActiveTabGroup().size()) {
+            final ChatTab tab = tabs.getActiveTabGroup().getTab(position);
+            lineIdIndex.removeTab(tab);
+            expiryTimers.cancel(tab);
+
+            // Release the tab's share of the memory budget.
+            tab.clearChatMessages(false);
         }
+        tabs.deleteTab(position);
     }
 
     public void resetSelectedTab() {
-        activeTab = tabs.get(activeGroup).isEmpty() ? null : tabs.get(activeGroup).keySet().stream().findFirst().get();
-        tabOffset = 0;
+        tabs.resetSelectedTab();
     }
 
     /**
-     * Updates the selected tab.
+     * Draws the chat: drops the expired lines, updates the tab under the mouse, draws the active tab, and draws the tab
+     * bar while the chat is open.
+     *
+     * @param updateCounter The current update counter.
      */
-    public void updateTabs(final float chatScale) {
+    public void drawChat(final int updateCounter) {
+        final Object trace = Tracer.begin(TraceEvent.DRAW);
+        expireLines(updateCounter);
+        final float chatScale = client.getGameSettings().chatScale;
         tabDisplay.updateTabs(chatScale);
-    }
+        final ChatTab activeChat = getActiveChat();
+        if (activeChat != null) {
+            activeChat.drawChat(updateCounter);
+        }
 
-    /**
-     * Draws the labels of the tabs.
-     */
-    public void drawTabLabels() {
-        tabDisplay.drawTabLabels();
+        final boolean chatOpen = client.isChatOpen();
+        client.pushMatrix();
+        client.translate(2.0f, 8.0f);
+        client.scale(chatScale);
+        if (chatOpen) {
+            tabDisplay.drawTabLabels();
+        }
+        client.popMatrix();
+
+        if (trace != null) {
+            Tracer.commit(trace, chatOpen);
+        }
     }
 
     /**
@@ -256,29 +668,13 @@ public class TabManager {
         tabDisplay.handleClick(mouseButton);
     }
 
-    /**
-     * Loads the tab configurations from the save file.
-     */
-    private void loadState() {
-        tabs.clear();
-        tabs.addAll(tabIO.loadState());
-    }
-
-    /**
-     * Adds a default tab.
-     */
-    private void addDefaultTab() {
-        tabs.get(activeGroup).put("General", new ChatTab(Minecraft.getMinecraft(), ".*", false,
-                true, false, "", 1.0f / 3.0f));
-    }
-
     /**
      * Get the tabs from the currently active tab group.
      *
      * @return The tabs.
      */
-    public Collection<Entry<String, ChatTab>> getActiveTabGroup() {
-        return Collections.unmodifiableCollection(tabs.get(activeGroup).entrySet());
+    public TabGroup<ChatTab> getActiveTabGroup() {
+        return tabs.getActiveTabGroup();
     }
 
     /**
@@ -287,10 +683,7 @@ public class TabManager {
      * @return The currently active tab.
      */
     public ChatTab getActiveChat() {
-        if (!tabs.get(activeGroup).containsKey(activeTab)) {
-            return null;
-        }
-        return tabs.get(activeGroup).get(activeTab);
+        return tabs.getActiveTab();
     }
 
     /**
@@ -300,7 +693,7 @@ public class TabManager {
      */
     public String getActivePrefix() {
         if (getActiveChat() != null) {
-            return getActiveChat().getPrefix();
+            return getActiveChat().getSettings().getPrefix();
         }
         return "";
     }
@@ -311,10 +704,6 @@ public class TabManager {
      * @return All existing chats.
      */
     public Collection<GuiNewChat> getAllChats() {
-        final Collection<GuiNewChat> chats = new LinkedList<>();
-        for (final Map<String, ChatTab> tabMap : tabs) {
-            chats.addAll(tabMap.values());
-        }
-        return chats;
+        return Collections.unmodifiableCollection(tabs.getAllTabs());
     }
 }